@@ -36,6 +36,21 @@ public class Config {
      */
     public final int deckSize;
 
+    /**
+     * The number of cards from which set searches are split across all the cores (0 or less to never go parallel)
+     */
+    public final int parallelSearchThreshold;
+
+    /**
+     * The number of card collections whose sets are remembered (0 to not cache set queries)
+     */
+    public final int setCacheSize;
+
+    /**
+     * Which cached collection to forget when the cache is full: LRU (least recently used) or FIFO (oldest)
+     */
+    public final String setCacheEviction;
+
     /**
      * The number of human players in the game.
      */
@@ -51,6 +66,29 @@ public class Config {
      */
     public final int players;
 
+    /**
+     * How to run the player and computer threads: PLATFORM (a thread each), VIRTUAL (a virtual thread each, if the JVM
+     * supports them) or POOL (reusable threads from a shared pool). Parked players keep their thread, so only VIRTUAL
+     * scales to thousands of players: POOL still takes a platform thread per player and only saves creating them between games
+     */
+    public final String threadModel;
+
+    /**
+     * How computer players choose keys: RANDOM (random slots) or SOLVER (the slots of a set on the table)
+     */
+    public final String aiStrategy;
+
+    /**
+     * The mean and the standard deviation of the reaction time of a SOLVER computer player, in milliseconds
+     */
+    public final long aiReactionMeanMillis;
+    public final long aiReactionStdDevMillis;
+
+    /**
+     * The probability that a SOLVER computer player claims a wrong set
+     */
+    public final double aiErrorRate;
+
     /**
      * Whether to print out hints to the console or not
      */
@@ -197,11 +235,19 @@ public class Config {
         featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
         deckSize = (int) Math.pow(featureSize, featureCount);
+        parallelSearchThreshold = Integer.parseInt(properties.getProperty("ParallelSearchThreshold", "300"));
+        setCacheSize = Integer.parseInt(properties.getProperty("SetCacheSize", "64"));
+        setCacheEviction = properties.getProperty("SetCacheEviction", "LRU").trim();
 
         // gameplay settings
         humanPlayers = Integer.parseInt(properties.getProperty("HumanPlayers", "2"));
         computerPlayers = Integer.parseInt(properties.getProperty("ComputerPlayers", "0"));
         players = humanPlayers + computerPlayers;
+        threadModel = properties.getProperty("ThreadModel", "PLATFORM").trim().toUpperCase();
+        aiStrategy = properties.getProperty("AiStrategy", "RANDOM").trim().toUpperCase();
+        aiReactionMeanMillis = (long) (Double.parseDouble(properties.getProperty("AiReactionMeanSeconds", "2")) * 1000.0);
+        aiReactionStdDevMillis = (long) (Double.parseDouble(properties.getProperty("AiReactionStdDevSeconds", "0.5")) * 1000.0);
+        aiErrorRate = Double.parseDouble(properties.getProperty("AiErrorRate", "0.1"));
 
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) * 1000.0);
@@ -44,6 +44,7 @@ public class Main {
         ThreadLogger.logStart(logger, Thread.currentThread().getName());
         Config config = new Config(logger, "config.properties");
         Util util = new UtilImpl(config);
+        if (config.setCacheSize > 0) util = new UtilCacheDecorator(util, config);
 
         Player[] players = new Player[config.players];
         UserInterface ui = null;
@@ -75,6 +76,10 @@ public class Main {
             if (!xButtonPressed && config.endGamePauseMillies > 0) Thread.sleep(config.endGamePauseMillies);
         } catch (InterruptedException ignored) {
         } finally {
+            if (util instanceof UtilCacheDecorator) {
+                UtilCacheDecorator cache = (UtilCacheDecorator) util;
+                logger.info("set cache: " + cache.hits() + " hits, " + cache.misses() + " misses");
+            }
             logger.severe("thanks for playing... it was fun!");
             System.out.println("Thanks for playing... it was fun!");
             ThreadLogger.logStop(logger, Thread.currentThread().getName());
@@ -0,0 +1,143 @@
+package bguspl.set;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A fork/join search for sets in a large array of cards. The indices of the first card of each set are split into
+ * chunks that are searched in parallel, and the sets found are then handed to the sink in the same order a
+ * sequential search would have found them. Chunks stop searching as soon as the chunks before them are known to
+ * hold count sets.
+ */
+class ParallelSetSearch {
+
+    /**
+     * The number of chunks per available core (more chunks balance the work better, since the first chunks have
+     * more pairs to check).
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final UtilImpl util;
+    private final int setSize;
+    private final int[] cards;
+    private final int len;
+    private final int count;
+
+    /**
+     * The number of first-card indices per chunk, and the number of chunks.
+     */
+    private final int chunkSize;
+    private final int chunks;
+
+    /**
+     * The sets found by each chunk, setSize entries per set, and the number of sets found by each chunk.
+     */
+    private final int[][] results;
+    private final int[] found;
+
+    /**
+     * The chunks that finished searching, the number of leading chunks that finished, and their total sets.
+     */
+    private final boolean[] done;
+    private int prefix;
+    private int prefixFound;
+
+    /**
+     * The last chunk whose sets can still be reported (chunks after it need not search).
+     */
+    private volatile int cutoff = Integer.MAX_VALUE;
+
+    ParallelSetSearch(UtilImpl util, int setSize, int[] cards, int len, int count) {
+        this.util = util;
+        this.setSize = setSize;
+        this.cards = cards;
+        this.len = len;
+        this.count = count;
+
+        int parallelism = ForkJoinPool.getCommonPoolParallelism() * CHUNKS_PER_THREAD;
+        chunkSize = Math.max(1, (len + parallelism - 1) / parallelism);
+        chunks = (len + chunkSize - 1) / chunkSize;
+        results = new int[chunks][];
+        found = new int[chunks];
+        done = new boolean[chunks];
+    }
+
+    /**
+     * Runs the search and hands the sets found to the sink in lexicographic order.
+     *
+     * @param sink - receives the sets found (may be null to only count them).
+     * @return - the number of sets passed to the sink.
+     */
+    int run(Util.SetSink sink) {
+        ForkJoinPool.commonPool().invoke(new Search(0, chunks, sink != null));
+
+        int reported = 0;
+        int[] set = new int[setSize];
+        for (int chunk = 0; chunk < chunks && reported < count; ++chunk)
+            for (int i = 0; i < found[chunk] && reported < count; ++i) {
+                ++reported;
+                if (sink == null) continue;
+                System.arraycopy(results[chunk], i * setSize, set, 0, setSize);
+                if (!sink.accept(set)) return reported;
+            }
+        return reported;
+    }
+
+    private void searchChunk(int chunk, boolean keep) {
+        if (chunk <= cutoff) {
+            int from = chunk * chunkSize, to = Math.min(len, from + chunkSize);
+            results[chunk] = new int[keep ? setSize * Math.max(1, Math.min(count, chunkSize)) : 0];
+            found[chunk] = util.findSetsInRange(cards, len, from, to, count, set -> {
+                if (keep) {
+                    int size = found[chunk] * setSize;
+                    if (size + setSize > results[chunk].length)
+                        results[chunk] = Arrays.copyOf(results[chunk], 2 * results[chunk].length + setSize);
+                    System.arraycopy(set, 0, results[chunk], size, setSize);
+                }
+                ++found[chunk];
+                return chunk <= cutoff;
+            });
+        }
+        chunkDone(chunk);
+    }
+
+    /**
+     * Marks a chunk as done and moves the cutoff once the leading chunks that are done hold count sets.
+     */
+    private synchronized void chunkDone(int chunk) {
+        done[chunk] = true;
+        while (prefix < chunks && done[prefix] && cutoff == Integer.MAX_VALUE) {
+            prefixFound += found[prefix];
+            if (prefixFound >= count) cutoff = prefix;
+            ++prefix;
+        }
+    }
+
+    /**
+     * Splits a range of chunks until a single chunk is left and searches it.
+     */
+    private class Search extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+        private final boolean keep;
+
+        Search(int from, int to, boolean keep) {
+            this.from = from;
+            this.to = to;
+            this.keep = keep;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (from < to) searchChunk(from, keep);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Search(from, middle, keep), new Search(middle, to, keep));
+        }
+    }
+}
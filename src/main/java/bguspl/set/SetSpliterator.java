@@ -0,0 +1,68 @@
+package bguspl.set;
+
+import java.util.ArrayDeque;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A lazy enumeration of the sets in an array of cards. Sets are searched one first card at a time, so only the sets
+ * starting with the current first card are ever held in memory. Splitting divides the remaining first cards in two.
+ */
+class SetSpliterator implements Spliterator<int[]> {
+
+    private final UtilImpl util;
+    private final int[] cards;
+    private final int len;
+
+    /**
+     * The range [next, end) of first-card indices that were not searched yet.
+     */
+    private int next;
+    private final int end;
+
+    /**
+     * Sets that were found but not consumed yet (all of them start before index next).
+     */
+    private ArrayDeque<int[]> found = new ArrayDeque<>();
+
+    SetSpliterator(UtilImpl util, int[] cards, int len, int next, int end) {
+        this.util = util;
+        this.cards = cards;
+        this.len = len;
+        this.next = next;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super int[]> action) {
+        while (found.isEmpty() && next < end) {
+            util.findSetsInRange(cards, len, next, next + 1, Integer.MAX_VALUE, set -> found.add(set.clone()));
+            ++next;
+        }
+        if (found.isEmpty()) return false;
+        action.accept(found.poll());
+        return true;
+    }
+
+    @Override
+    public Spliterator<int[]> trySplit() {
+        if (end - next < 2) return null;
+        int middle = (next + end) >>> 1;
+        // the prefix takes the sets that were already found, since they come first
+        SetSpliterator prefix = new SetSpliterator(util, cards, len, next, middle);
+        prefix.found = found;
+        found = new ArrayDeque<>();
+        next = middle;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return found.size() + (long) (end - next) * len;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL | IMMUTABLE;
+    }
+}
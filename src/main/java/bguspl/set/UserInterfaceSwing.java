@@ -74,8 +74,8 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         private final JLabel timerField;
 
         private String generateTime(long millies, boolean warn) {
-            if (warn)
-                return format("Remaining Time: %.2f", (double) millies / 1000.0f);
+            if (warn) // rounded down to the hundredth, like the seconds below
+                return format("Remaining Time: %d.%02d", millies / 1000L, millies / 10L % 100L);
             else
                 return format("Remaining Time: %d", millies / 1000L);
         }
@@ -1,6 +1,7 @@
 package bguspl.set;
 
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * An interface for general utilities provided for convenience.
@@ -40,8 +41,84 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * Checks if three cards form a legal set (same as testSet(new int[]{a, b, c}), without allocating).
+     *
+     * @param a - the first card id.
+     * @param b - the second card id.
+     * @param c - the third card id.
+     * @return - true iff the three cards form a legal set.
+     */
+    boolean testSet(int a, int b, int c);
+
+    /**
+     * Finds up to count sets in the first len entries of the given array and passes each one to the sink.
+     * Does not allocate: the array handed to the sink is reused between calls and must be copied to be kept.
+     *
+     * @param cards - an array of card ids.
+     * @param len   - the number of entries of cards to search in.
+     * @param count - the maximum number of sets to find.
+     * @param sink  - receives the sets found in lexicographic order (may be null to only count them).
+     * @return - the number of sets passed to the sink.
+     */
+    int findSets(int[] cards, int len, int count, SetSink sink);
+
+    /**
+     * Lazily enumerates the sets in the first len entries of the given array, in lexicographic order. Sets are only
+     * searched as the stream is consumed, so short-circuiting operations (e.g. limit or findFirst) stop the search.
+     *
+     * @param cards - an array of card ids (copied, so later changes to it do not affect the stream).
+     * @param len   - the number of entries of cards to search in.
+     * @return - a stream of integer arrays, each one contains the sorted card ids of a legal set.
+     */
+    Stream<int[]> streamSets(int[] cards, int len);
+
+    /**
+     * Finds up to count sets made of the given card and cards from the first len entries of the given array
+     * (see findSets(int[], int, int, SetSink)).
+     *
+     * @param card  - a card id that must be part of every set (should not appear in cards).
+     * @param cards - an array of card ids.
+     * @param len   - the number of entries of cards to search in.
+     * @param count - the maximum number of sets to find.
+     * @param sink  - receives the sets found (may be null to only count them).
+     * @return - the number of sets passed to the sink.
+     */
+    int findSetsWith(int card, int[] cards, int len, int count, SetSink sink);
+
+    /**
+     * Computes the unique card that makes a legal set of three with two given cards (for featureSize == 3).
+     *
+     * @param a - the first card id.
+     * @param b - another card id.
+     * @return - the card id completing the set.
+     */
+    int thirdCard(int a, int b);
+
+    /**
+     * Counts the sets in the first len entries of the given array.
+     *
+     * @param cards - an array of card ids.
+     * @param len   - the number of entries of cards to search in.
+     * @return - the number of legal sets.
+     */
+    int countSets(int[] cards, int len);
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
     void spin();
+
+    /**
+     * A consumer of the sets found by findSets(int[], int, int, SetSink).
+     */
+    @FunctionalInterface
+    interface SetSink {
+
+        /**
+         * @param set - the sorted card ids of a legal set (reused by the caller, copy it to keep it).
+         * @return - true to keep searching, false to stop.
+         */
+        boolean accept(int[] set);
+    }
 }
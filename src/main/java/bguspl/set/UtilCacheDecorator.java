@@ -0,0 +1,286 @@
+package bguspl.set;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * A Util that remembers the sets found in recently queried collections of cards, so that repeated queries on an
+ * unchanged table cost a single hash lookup. Collections are identified by a bitmask of the cards they contain, and
+ * each entry keeps the positions of the cards of its sets, so a hit reports the same sets in the same order as the
+ * search it replaces. Only complete searches are cached: a search stopped early by count or by the sink is not.
+ */
+public class UtilCacheDecorator implements Util {
+
+    private final Util util;
+
+    private final int featureSize;
+
+    /**
+     * The cached sets per collection of cards, evicting the least recently used (or the oldest) entry when full.
+     */
+    private final Map<CardsKey, CachedSets> cache;
+
+    /**
+     * Counters of the queries answered from the cache and of those that had to search.
+     */
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Per thread key, set buffer and recorder for lookups and searches, so that a hit does not allocate.
+     */
+    private final ThreadLocal<CardsKey> lookupKey;
+    private final ThreadLocal<int[]> setBuffer;
+    private final ThreadLocal<Recorder> recorder;
+
+    /**
+     * All the sets found in a collection of cards.
+     */
+    private static class CachedSets {
+        final int[] cards;     // the cards searched, in the order they were given
+        final int[] positions; // the positions in cards of the cards of each set, featureSize per set, in order found
+
+        CachedSets(int[] cards, int[] positions) {
+            this.cards = cards;
+            this.positions = positions;
+        }
+
+        /**
+         * @return - true iff the given cards are in the same order as the cards of this entry.
+         */
+        boolean matches(int[] other, int len) {
+            if (len != cards.length) return false;
+            for (int i = 0; i < len; ++i)
+                if (cards[i] != other[i]) return false;
+            return true;
+        }
+    }
+
+    /**
+     * A sink that records the positions of the cards of the sets it is handed, and passes the sets on.
+     */
+    private static class Recorder implements SetSink {
+        final int[] position; // the position of each card in the searched cards, -1 if not searched
+        int[] positions = new int[0];
+        int recorded;
+        boolean stopped;
+        SetSink target;
+
+        Recorder(int deckSize) {
+            position = new int[deckSize];
+            Arrays.fill(position, -1);
+        }
+
+        Recorder start(int[] cards, int len, SetSink target) {
+            for (int i = 0; i < len; ++i)
+                position[cards[i]] = i;
+            this.target = target;
+            recorded = 0;
+            stopped = false;
+            return this;
+        }
+
+        @Override
+        public boolean accept(int[] set) {
+            if (recorded + set.length > positions.length)
+                positions = Arrays.copyOf(positions, 2 * positions.length + set.length);
+            for (int card : set)
+                positions[recorded++] = position[card];
+            if (target != null && !target.accept(set)) stopped = true;
+            return !stopped;
+        }
+
+        /**
+         * Clears the positions of the searched cards.
+         */
+        void finish(int[] cards, int len) {
+            for (int i = 0; i < len; ++i)
+                position[cards[i]] = -1;
+            target = null;
+        }
+
+        /**
+         * @return - the sets recorded in the search of the given cards.
+         */
+        CachedSets result(int[] cards, int len) {
+            return new CachedSets(Arrays.copyOf(cards, len), Arrays.copyOf(positions, recorded));
+        }
+    }
+
+    /**
+     * A bitmask of the cards in a collection (one bit per card of the deck).
+     */
+    private static class CardsKey {
+        final long[] bits;
+        int hash;
+
+        CardsKey(int deckSize) {
+            bits = new long[(deckSize + Long.SIZE - 1) / Long.SIZE];
+        }
+
+        CardsKey set(int[] cards, int len) {
+            Arrays.fill(bits, 0);
+            for (int i = 0; i < len; ++i)
+                bits[cards[i] / Long.SIZE] |= 1L << cards[i];
+            hash = Arrays.hashCode(bits);
+            return this;
+        }
+
+        CardsKey copy() {
+            CardsKey key = new CardsKey(bits.length * Long.SIZE);
+            System.arraycopy(bits, 0, key.bits, 0, bits.length);
+            key.hash = hash;
+            return key;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof CardsKey && Arrays.equals(bits, ((CardsKey) other).bits);
+        }
+    }
+
+    public UtilCacheDecorator(Util util, Config config) {
+        this.util = util;
+        this.featureSize = config.featureSize;
+        this.lookupKey = ThreadLocal.withInitial(() -> new CardsKey(config.deckSize));
+        this.setBuffer = ThreadLocal.withInitial(() -> new int[config.featureSize]);
+        this.recorder = ThreadLocal.withInitial(() -> new Recorder(config.deckSize));
+
+        int capacity = config.setCacheSize;
+        boolean accessOrder = !"FIFO".equalsIgnoreCase(config.setCacheEviction);
+        cache = new LinkedHashMap<CardsKey, CachedSets>(16, 0.75f, accessOrder) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CardsKey, CachedSets> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return the number of queries answered from the cache.
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of queries that had to search for sets.
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+    /**
+     * @return the cached sets of the given cards (in the same order), or null if they are not cached.
+     */
+    private CachedSets lookup(CardsKey key, int[] cards, int len) {
+        CachedSets entry;
+        synchronized (cache) {
+            entry = cache.get(key);
+        }
+        if (entry != null && entry.matches(cards, len)) {
+            hits.incrementAndGet();
+            return entry;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    @Override
+    public int[] cardToFeatures(int card) {
+        return util.cardToFeatures(card);
+    }
+
+    @Override
+    public int[][] cardsToFeatures(int[] cards) {
+        return util.cardsToFeatures(cards);
+    }
+
+    @Override
+    public boolean testSet(int[] cards) {
+        return util.testSet(cards);
+    }
+
+    @Override
+    public boolean testSet(int a, int b, int c) {
+        return util.testSet(a, b, c);
+    }
+
+    @Override
+    public List<int[]> findSets(List<Integer> deck, int count) {
+        int[] cards = deck.stream().mapToInt(Integer::intValue).toArray();
+        LinkedList<int[]> sets = new LinkedList<>();
+        findSets(cards, cards.length, count, set -> sets.add(set.clone()));
+        return sets;
+    }
+
+    @Override
+    public int findSets(int[] cards, int len, int count, SetSink sink) {
+        CardsKey key = lookupKey.get().set(cards, len);
+        CachedSets entry = lookup(key, cards, len);
+        if (entry != null) {
+            int[] buffer = setBuffer.get();
+            int found = 0;
+            for (int i = 0; i < entry.positions.length && found < count; i += featureSize) {
+                ++found;
+                if (sink == null) continue;
+                for (int j = 0; j < featureSize; ++j)
+                    buffer[j] = cards[entry.positions[i + j]];
+                if (!sink.accept(buffer)) break;
+            }
+            return found;
+        }
+
+        Recorder recording = recorder.get().start(cards, len, sink);
+        int found;
+        try {
+            found = util.findSets(cards, len, count, recording);
+        } finally {
+            recording.finish(cards, len);
+        }
+        if (!recording.stopped && found < count) {
+            entry = recording.result(cards, len);
+            synchronized (cache) {
+                cache.put(key.copy(), entry);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public Stream<int[]> streamSets(int[] cards, int len) {
+        return util.streamSets(cards, len);
+    }
+
+    @Override
+    public int findSetsWith(int card, int[] cards, int len, int count, SetSink sink) {
+        return util.findSetsWith(card, cards, len, count, sink);
+    }
+
+    @Override
+    public int thirdCard(int a, int b) {
+        return util.thirdCard(a, b);
+    }
+
+    @Override
+    public int countSets(int[] cards, int len) {
+        CachedSets entry = lookup(lookupKey.get().set(cards, len), cards, len);
+        if (entry != null) return entry.positions.length / featureSize;
+        return util.countSets(cards, len); // counting alone records no sets to cache
+    }
+
+    @Override
+    public void spin() {
+        util.spin();
+    }
+}
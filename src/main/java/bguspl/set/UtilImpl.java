@@ -5,6 +5,8 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The implementation of the UserInterface interface.
@@ -13,15 +15,115 @@ public class UtilImpl implements Util {
 
     private final Config config;
 
+    /**
+     * The number of bits per feature in packedCards.
+     */
+    private static final int BITS_PER_FEATURE = 2;
+
+    /**
+     * The lowest bit of every feature in a packed card.
+     */
+    private static final long LOW_BITS = 0x5555555555555555L;
+
+    /**
+     * The features of all the cards, featureCount entries per card (in the order returned by cardToFeatures).
+     */
+    private final byte[] featureTable;
+
+    /**
+     * The features of every card packed into a single long, BITS_PER_FEATURE bits per feature starting from the
+     * last feature (null if featureSize or featureCount are too big for that).
+     */
+    private final long[] packedCards;
+
+    /**
+     * The features of every card as one-hot bits packed into a single long, featureSize bits per feature with the
+     * bit of the feature's value set (null if they do not fit).
+     */
+    private final long[] oneHotCards;
+
+    /**
+     * In the one-hot encoding: the lowest bit and the highest bit of every feature, and all the bits of all features.
+     */
+    private final long oneHotLow, oneHotHigh, oneHotAll;
+
+    /**
+     * weights[i] == featureSize ^ (featureCount - 1 - i), the value of feature i in a card id.
+     */
+    private final int[] weights;
+
+    /**
+     * completion[x * featureSize + y] == (-x-y) mod featureSize, the feature value completing x and y to a set.
+     */
+    private final byte[] completion;
+
+    /**
+     * Per thread buffers used by the set search, so that it does not allocate.
+     */
+    private final ThreadLocal<Scratch> scratch;
+
+    private class Scratch {
+        final int[] position = new int[config.deckSize]; // the index of each card in the searched array (-1 if none)
+        final int[] set = new int[config.featureSize]; // the set handed to the sink
+        final int[] combination = new int[config.featureSize];
+        final int[][] masks = new int[config.featureSize][config.featureCount]; // feature values per search depth
+        final int[] sorted = new int[config.featureSize];
+
+        // the state of the current pruned search
+        SetSink sink;
+        int count, found;
+
+        Scratch() {
+            Arrays.fill(position, -1);
+        }
+    }
+
     public UtilImpl(Config config) {
         this.config = config;
+        this.scratch = ThreadLocal.withInitial(Scratch::new);
+
+        weights = new int[config.featureCount];
+        for (int i = config.featureCount - 1, weight = 1; i >= 0; --i, weight *= config.featureSize)
+            weights[i] = weight;
+
+        completion = new byte[config.featureSize * config.featureSize];
+        for (int x = 0; x < config.featureSize; ++x)
+            for (int y = 0; y < config.featureSize; ++y)
+                completion[x * config.featureSize + y] = (byte) ((2 * config.featureSize - x - y) % config.featureSize);
+
+        featureTable = new byte[config.deckSize * config.featureCount];
+        boolean packable = config.featureSize <= 1 << BITS_PER_FEATURE && config.featureCount * BITS_PER_FEATURE <= Long.SIZE;
+        packedCards = packable ? new long[config.deckSize] : null;
+        for (int card = 0; card < config.deckSize; ++card) {
+            int id = card;
+            long packed = 0;
+            for (int i = config.featureCount - 1; i >= 0; --i) {
+                int feature = id % config.featureSize;
+                id /= config.featureSize;
+                featureTable[card * config.featureCount + i] = (byte) feature;
+                packed = packed << BITS_PER_FEATURE | feature;
+            }
+            if (packable) packedCards[card] = packed;
+        }
+
+        boolean oneHot = config.featureSize > 1 && config.featureCount * config.featureSize <= Long.SIZE;
+        oneHotCards = oneHot ? new long[config.deckSize] : null;
+        long low = 0, high = 0;
+        for (int i = 0; oneHot && i < config.featureCount; ++i) {
+            low |= 1L << i * config.featureSize;
+            high |= 1L << (i + 1) * config.featureSize - 1;
+        }
+        oneHotLow = low;
+        oneHotHigh = high;
+        oneHotAll = oneHot ? (high - low) | high : 0;
+        for (int card = 0; oneHot && card < config.deckSize; ++card)
+            for (int i = 0; i < config.featureCount; ++i)
+                oneHotCards[card] |= 1L << (config.featureCount - 1 - i) * config.featureSize + feature(card, i);
     }
 
     private void cardToFeatures(int card, int[] features) {
-        for (int i = config.featureCount - 1; i >= 0; --i) {
-            features[i] = card % config.featureSize;
-            card /= config.featureSize;
-        }
+        for (int i = 0; i < config.featureCount; ++i)
+            features[i] = feature(card, i);
     }
 
     @Override
@@ -40,21 +142,48 @@ public class UtilImpl implements Util {
 
     @Override
     public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
+        if (cards.length == 3) return testSet(cards[0], cards[1], cards[2]);
+        return testSet(cards, cards.length);
+    }
+
+    /**
+     * Checks if the first len cards of the array form a legal set: in every feature, the values of the cards are
+     * either all the same (a single value) or all different (len values).
+     */
+    private boolean testSet(int[] cards, int len) {
+        if (len < 2) return false;
+        if (oneHotCards != null && len == config.featureSize) {
+            long values = 0;
+            for (int j = 0; j < len; ++j)
+                values |= oneHotCards[cards[j]];
+            return testOneHotSet(values);
+        }
+
+        if (config.featureSize <= Long.SIZE) {
+            for (int i = 0; i < config.featureCount; ++i) {
+                long values = 0;
+                for (int j = 0; j < len; ++j)
+                    values |= 1L << feature(cards[j], i);
+                int distinct = Long.bitCount(values);
+                if (distinct != 1 && distinct != len) return false;
+            }
+            return true;
+        }
+
         for (int i = 0; i < config.featureCount; ++i) {
             boolean sameSame = true, butDifferent = true;
 
             // check if this features is sameSame in all cards
-            for (int j = 1; j < features.length; ++j)
-                if (features[0][i] != features[j][i]) {
+            for (int j = 1; j < len; ++j)
+                if (feature(cards[0], i) != feature(cards[j], i)) {
                     sameSame = false;
                     break;
                 }
 
             // check if this feature is butDifferent in all cards
-            for (int j = 1; j < features.length; ++j)
-                for (int k = j; k < features.length; ++k)
-                    if (features[j - 1][i] == features[k][i]) {
+            for (int j = 1; j < len; ++j)
+                for (int k = j; k < len; ++k)
+                    if (feature(cards[j - 1], i) == feature(cards[k], i)) {
                         butDifferent = false;
                         break;
                     }
@@ -64,21 +193,313 @@ public class UtilImpl implements Util {
         return true;
     }
 
+    /**
+     * Tests all the features of featureSize one-hot cards at once (SWAR), given the OR of the cards: a feature is
+     * legal iff a single one of its bits is set (all the same) or all of them are (all different).
+     */
+    private boolean testOneHotSet(long values) {
+        long severalValues = values & (values - oneHotLow); // every feature has at least one bit, so nothing borrows
+        long notAllValues = values ^ oneHotAll;
+        return (nonZeroFeatures(severalValues) & nonZeroFeatures(notAllValues)) == 0;
+    }
+
+    /**
+     * @return - a word with the highest bit of every one-hot feature that is not zero in x set.
+     */
+    private long nonZeroFeatures(long x) {
+        long lowBits = oneHotAll & ~oneHotHigh;
+        return ((x & lowBits) + lowBits | x) & oneHotHigh;
+    }
+
+    @Override
+    public boolean testSet(int a, int b, int c) {
+        if (packedCards != null) return testPackedSet(packedCards[a], packedCards[b], packedCards[c]);
+
+        for (int i = 0; i < config.featureCount; ++i)
+            if (!isSetFeature(feature(a, i), feature(b, i), feature(c, i))) return false;
+        return true;
+    }
+
+    /**
+     * Tests all the features of three packed cards at once (SWAR): a feature is legal iff either no pair of cards
+     * differs in it or every pair does.
+     */
+    private static boolean testPackedSet(long a, long b, long c) {
+        long ab = differ(a, b), ac = differ(a, c), bc = differ(b, c);
+        return ((ab | ac | bc) & ~(ab & ac & bc)) == 0;
+    }
+
+    /**
+     * @return - a word with the lowest bit of every feature in which the two packed cards differ set.
+     */
+    private static long differ(long x, long y) {
+        long diff = x ^ y;
+        return (diff | diff >>> 1) & LOW_BITS;
+    }
+
+    /**
+     * @return - true iff the three feature values are all the same or all different.
+     */
+    private static boolean isSetFeature(int featureA, int featureB, int featureC) {
+        boolean sameSame = featureA == featureB && featureB == featureC;
+        boolean butDifferent = featureA != featureB && featureB != featureC && featureA != featureC;
+        return sameSame != butDifferent;
+    }
+
+    /**
+     * @param card    - the card id.
+     * @param feature - the index of the feature (as in cardToFeatures).
+     * @return - the value of the feature in the card.
+     */
+    private int feature(int card, int feature) {
+        return featureTable[card * config.featureCount + feature];
+    }
+
+    /**
+     * Computes the unique card that completes the given two cards to a legal set of three
+     * (i.e. per feature: (-a-b) mod featureSize).
+     */
+    @Override
+    public int thirdCard(int a, int b) {
+        int card = 0;
+        for (int i = 0; i < config.featureCount; ++i)
+            card += completion[feature(a, i) * config.featureSize + feature(b, i)] * weights[i];
+        return card;
+    }
+
     @Override
     public List<int[]> findSets(List<Integer> deck, int count) {
         LinkedList<int[]> sets = new LinkedList<>();
-        int n = deck.size();
-        int r = config.featureSize;
-        int[] combination = new int[r];
+        int[] cards = deck.stream().mapToInt(Integer::intValue).toArray();
+        findSets(cards, cards.length, count, set -> sets.add(set.clone()));
+        return sets;
+    }
+
+    @Override
+    public int findSets(int[] cards, int len, int count, SetSink sink) {
+        if (config.parallelSearchThreshold > 0 && len >= config.parallelSearchThreshold)
+            return new ParallelSetSearch(this, config.featureSize, cards, len, count).run(sink);
+        return findSetsInRange(cards, len, 0, len, count, sink);
+    }
+
+    /**
+     * Finds up to count sets whose first card (by index in the array) is in the range [from, to).
+     * The sets are found in the same order as findSets(int[], int, int, SetSink) would find them.
+     */
+    int findSetsInRange(int[] cards, int len, int from, int to, int count, SetSink sink) {
+        Scratch scratch = this.scratch.get();
+        if (config.featureSize == 3) return findSetsByCompletion(cards, len, from, to, count, sink, scratch);
+        if (canPrune()) return findSetsByPruning(-1, cards, len, from, to, count, sink, scratch);
+        return findSetsByCombinations(-1, cards, len, from, to, count, sink, scratch);
+    }
+
+    /**
+     * @return - true iff the pruned search can be used (the last card of a set is determined by the others and the
+     * values of a feature fit in an int mask).
+     */
+    private boolean canPrune() {
+        return config.featureSize > 3 && config.featureSize <= Integer.SIZE;
+    }
+
+    @Override
+    public Stream<int[]> streamSets(int[] cards, int len) {
+        return StreamSupport.stream(new SetSpliterator(this, Arrays.copyOf(cards, len), len, 0, len), false);
+    }
+
+    @Override
+    public int findSetsWith(int card, int[] cards, int len, int count, SetSink sink) {
+        Scratch scratch = this.scratch.get();
+        if (canPrune()) return findSetsByPruning(card, cards, len, 0, len, count, sink, scratch);
+        if (config.featureSize != 3) return findSetsByCombinations(card, cards, len, 0, len, count, sink, scratch);
+
+        int[] position = scratch.position;
+        for (int i = 0; i < len; ++i)
+            position[cards[i]] = i;
+
+        int found = 0;
+        try {
+            for (int i = 0; i < len; ++i) {
+                int third = thirdCard(card, cards[i]);
+                if (position[third] > i) {
+                    ++found;
+                    if (!report(sink, scratch.set, card, cards[i], third) || found >= count) return found;
+                }
+            }
+            return found;
+        } finally {
+            for (int i = 0; i < len; ++i)
+                position[cards[i]] = -1;
+        }
+    }
+
+    @Override
+    public int countSets(int[] cards, int len) {
+        return findSets(cards, len, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Finds up to count sets of three cards: for each pair of cards there is exactly one card completing it to a set,
+     * so it is enough to look it up.
+     */
+    private int findSetsByCompletion(int[] cards, int len, int from, int to, int count, SetSink sink, Scratch scratch) {
+        int[] position = scratch.position;
+        for (int i = 0; i < len; ++i)
+            position[cards[i]] = i;
+
+        int found = 0;
+        try {
+            for (int i = from; i < to; ++i)
+                for (int j = i + 1; j < len; ++j) {
+                    int third = thirdCard(cards[i], cards[j]);
+                    // only take the third card after j so every set is reported once, in lexicographic order
+                    if (position[third] > j) {
+                        ++found;
+                        if (!report(sink, scratch.set, cards[i], cards[j], third) || found >= count) return found;
+                    }
+                }
+            return found;
+        } finally {
+            for (int i = 0; i < len; ++i)
+                position[cards[i]] = -1;
+        }
+    }
+
+    private static boolean report(SetSink sink, int[] set, int a, int b, int c) {
+        if (sink == null) return true;
+        set[0] = a;
+        set[1] = b;
+        set[2] = c;
+        Arrays.sort(set);
+        return sink.accept(set);
+    }
+
+    /**
+     * Finds up to count sets of featureSize cards by a depth first search over the first featureSize - 1 cards of
+     * each set, in increasing index order. Per feature, a bitmask of the values seen so far is kept, and tuples in
+     * which some feature is neither all the same nor all different are pruned as soon as they appear. The last card
+     * of each set is then determined by the masks, so it is looked up instead of enumerated.
+     *
+     * @param fixed - a card that must be part of every set (-1 if none), the rest of the set is taken from cards.
+     * @param from  - the lowest index of the first card taken from cards.
+     * @param to    - one after the highest index of the first card taken from cards.
+     */
+    private int findSetsByPruning(int fixed, int[] cards, int len, int from, int to, int count, SetSink sink, Scratch scratch) {
+        int[] position = scratch.position;
+        for (int i = 0; i < len; ++i)
+            position[cards[i]] = i;
+        scratch.sink = sink;
+        scratch.count = count;
+        scratch.found = 0;
+
+        try {
+            if (fixed < 0) {
+                extend(cards, len, 0, from, to, scratch);
+            } else {
+                addCard(null, scratch.masks[0], fixed, 1);
+                scratch.set[0] = fixed;
+                extend(cards, len, 1, from, to, scratch);
+            }
+            return scratch.found;
+        } finally {
+            for (int i = 0; i < len; ++i)
+                position[cards[i]] = -1;
+            scratch.sink = null;
+        }
+    }
+
+    /**
+     * Extends the partial set held in scratch.set[0..depth-1] by each card of cards[start..end-1] in turn.
+     *
+     * @return - false iff the search should stop.
+     */
+    private boolean extend(int[] cards, int len, int depth, int start, int end, Scratch scratch) {
+        int[] previous = depth == 0 ? null : scratch.masks[depth - 1];
+        int[] masks = scratch.masks[depth];
+        for (int i = start; i < end; ++i) {
+            if (!addCard(previous, masks, cards[i], depth + 1)) continue;
+            scratch.set[depth] = cards[i];
+
+            if (depth + 2 < config.featureSize) {
+                if (!extend(cards, len, depth + 1, i + 1, len, scratch)) return false;
+                continue;
+            }
+
+            int last = lastCard(masks);
+            // only take the last card after i so every set is reported once, in lexicographic order
+            if (scratch.position[last] > i) {
+                ++scratch.found;
+                if (scratch.sink != null) {
+                    System.arraycopy(scratch.set, 0, scratch.sorted, 0, depth + 1);
+                    scratch.sorted[depth + 1] = last;
+                    Arrays.sort(scratch.sorted);
+                    if (!scratch.sink.accept(scratch.sorted)) return false;
+                }
+                if (scratch.found >= scratch.count) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the values of a card to the feature masks of a partial set.
+     *
+     * @param previous - the masks of the partial set (null if it is empty).
+     * @param masks    - receives the masks of the partial set with the card.
+     * @param card     - the card to add.
+     * @param size     - the size of the partial set with the card.
+     * @return - false iff some feature is neither all the same nor all different with the card (masks is then invalid).
+     */
+    private boolean addCard(int[] previous, int[] masks, int card, int size) {
+        for (int i = 0; i < config.featureCount; ++i) {
+            int values = (previous == null ? 0 : previous[i]) | 1 << feature(card, i);
+            int distinct = Integer.bitCount(values);
+            if (distinct != 1 && distinct != size) return false;
+            masks[i] = values;
+        }
+        return true;
+    }
+
+    /**
+     * @param masks - the feature masks of featureSize - 1 cards that can be completed to a set.
+     * @return - the card id completing them: per feature, the same value or the one value that is missing.
+     */
+    private int lastCard(int[] masks) {
+        int all = (int) ((1L << config.featureSize) - 1);
+        int card = 0;
+        for (int i = 0; i < config.featureCount; ++i) {
+            int values = masks[i];
+            int value = Integer.bitCount(values) == 1 ? values : all & ~values;
+            card += Integer.numberOfTrailingZeros(value) * weights[i];
+        }
+        return card;
+    }
+
+    /**
+     * Finds up to count sets by testing every combination of featureSize cards (used when sets are not triplets).
+     *
+     * @param fixed - a card that must be part of every set (-1 if none), the rest of the set is taken from deck.
+     * @param from  - the lowest index of the first combination element.
+     * @param to    - one after the highest index of the first combination element.
+     */
+    private int findSetsByCombinations(int fixed, int[] deck, int n, int from, int to, int count, SetSink sink, Scratch scratch) {
+        int found = 0;
+        int first = fixed < 0 ? 0 : 1; // the fixed card takes the first place in the tested set
+        int r = config.featureSize - first;
+        int[] combination = scratch.combination;
+        int[] cards = scratch.set;
+        if (r <= 0) return found;
 
         for (int i = 0; i < r; ++i)
-            combination[i] = i;
+            combination[i] = from + i;
 
-        while (combination[r - 1] < deck.size()) {
-            int[] cards = Arrays.stream(combination).map(deck::get).sorted().toArray();
-            if (testSet(cards)) {
-                sets.add(cards);
-                if (sets.size() >= count) return sets;
+        while (combination[r - 1] < n && combination[0] < to) {
+            if (first > 0) cards[0] = fixed;
+            for (int i = 0; i < r; ++i)
+                cards[first + i] = deck[combination[i]];
+            if (testSet(cards, config.featureSize)) {
+                ++found;
+                Arrays.sort(cards);
+                if (sink != null && !sink.accept(cards) || found >= count) return found;
             }
 
             // generate next combination in lexicographic order
@@ -87,7 +508,7 @@ public class UtilImpl implements Util {
             combination[t]++;
             for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
         }
-        return sets;
+        return found;
     }
 
     public void spin() {
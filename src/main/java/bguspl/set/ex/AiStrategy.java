@@ -0,0 +1,45 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.Random;
+
+/**
+ * How a computer player chooses which keys to press (see Config.aiStrategy).
+ */
+public interface AiStrategy {
+
+    String RANDOM = "RANDOM";
+    String SOLVER = "SOLVER";
+
+    /**
+     * Plans the next key presses of the computer player.
+     * @param keys - receives the slots to press, in order (room for table.size + featureSize entries).
+     * @return - the number of slots to press.
+     */
+    int plan(int[] keys);
+
+    /**
+     * @return - the number of milliseconds the player takes to react before pressing the planned keys.
+     */
+    long reactionMillis();
+
+    /**
+     * Called after the reaction time, before the planned keys are pressed.
+     * @return - true iff the keys of the last plan still fit the table, false if they should be planned again.
+     */
+    boolean isCurrent();
+
+    /**
+     * Creates the strategy configured for a computer player.
+     * @param env    - the game environment objects.
+     * @param table  - the table the player plays on.
+     * @param player - the id of the player.
+     * @return - the player's strategy.
+     */
+    static AiStrategy create(Env env, Table table, int player) {
+        Random random = new Random();
+        if (SOLVER.equals(env.config.aiStrategy)) return new SolverAiStrategy(env, table, player, random);
+        return new RandomAiStrategy(table, random);
+    }
+}
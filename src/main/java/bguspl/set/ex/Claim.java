@@ -0,0 +1,88 @@
+package bguspl.set.ex;
+
+import bguspl.set.Util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A set claimed by a player: the slots the player chose, the cards that were in them and the table versions they
+ * were read at (see Table.snapshot).
+ *
+ * @inv slots.length == cards.length == slotVersions.length
+ */
+public final class Claim {
+
+    /**
+     * The claiming player.
+     */
+    public final Player player;
+
+    /**
+     * The version of the table when the cards were read.
+     */
+    public final long version;
+
+    /**
+     * The order in which the claim was made: claims made later have higher numbers, even within a millisecond.
+     */
+    public final long sequence;
+
+    private static final AtomicLong nextSequence = new AtomicLong();
+
+    private final int[] slots;
+    private final int[] cards;
+    private final long[] slotVersions;
+
+    /**
+     * @param player       - the claiming player.
+     * @param slots        - the claimed slots.
+     * @param cards        - the card in each slot.
+     * @param slotVersions - the version of each slot.
+     * @param version      - the version of the table.
+     */
+    public Claim(Player player, int[] slots, int[] cards, long[] slotVersions, long version) {
+        this.player = player;
+        this.slots = slots.clone();
+        this.cards = cards.clone();
+        this.slotVersions = slotVersions.clone();
+        this.version = version;
+        this.sequence = nextSequence.getAndIncrement();
+    }
+
+    /**
+     * @return - the number of cards claimed.
+     */
+    public int size() {
+        return slots.length;
+    }
+
+    public int slot(int i) {
+        return slots[i];
+    }
+
+    public int card(int i) {
+        return cards[i];
+    }
+
+    /**
+     * @param util - the game utilities.
+     * @return - true iff the claimed cards form a legal set.
+     */
+    public boolean isSet(Util util) {
+        return util.testSet(cards);
+    }
+
+    /**
+     * @param table - the table the claim was made on.
+     * @return - true iff the claimed slots still hold the cards that were read.
+     */
+    public boolean isCurrent(Table table) {
+        return table.isCurrent(version, slots, slots.length, slotVersions);
+    }
+
+    @Override
+    public String toString() {
+        return "player " + player.id + " claims " + Arrays.toString(cards) + " in " + Arrays.toString(slots);
+    }
+}
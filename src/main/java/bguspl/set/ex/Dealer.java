@@ -3,7 +3,9 @@ package bguspl.set.ex;
 import bguspl.set.Env;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -25,9 +27,19 @@ public class Dealer implements Runnable {
     private final Player[] players;
 
     /**
-     * The list of card ids that are left in the dealer's deck.
+     * The card ids that are left in the dealer's deck.
      */
-    private final List<Integer> deck;
+    private final Deck deck;
+
+    /**
+     * The legal sets that can still be collected from the cards in the deck and on the table.
+     */
+    private final RemainingSets remainingSets;
+
+    /**
+     * Prepares the next round's layout while the current round is played (with a turn timer only).
+     */
+    private final LayoutPlanner planner;
 
     /**
      * True iff game should be terminated due to an external event.
@@ -48,10 +60,11 @@ public class Dealer implements Runnable {
     final int ZERO = 0;
     final int TURN_TIME_INDICATOR = 0;
     final long ALMOST_SECOND = TimeUnit.MILLISECONDS.toMillis(999);
-    final long GENERAL_SLEEP_TIME = TimeUnit.MILLISECONDS.toMillis(100);
-    final long WARNING_SLEEP_TIME = TimeUnit.MILLISECONDS.toMillis(10);
+    final long SECOND_TICK = TimeUnit.SECONDS.toMillis(1);
+    final long WARNING_TICK = TimeUnit.MILLISECONDS.toMillis(10); // the countdown shows hundredths when warning
     //
     Thread dealerThread;
+    private volatile boolean playersStarted;
 
     public final Thread getDealerThread(){
         return dealerThread;
@@ -65,21 +78,53 @@ public class Dealer implements Runnable {
      * the order of placing/removing cards;
      */
     List<Integer> placeRemoveOrder;
-    public Queue<Player> Sets_IDs_To_Check = new ArrayDeque<>();
+    /**
+     * The claimed sets waiting to be checked (added by the players, drained by the dealer).
+     */
+    private final Queue<Claim> claims = new ConcurrentLinkedQueue<>();
+    /**
+     * The claims checked in one pass of the dealer, in the order they were made.
+     */
+    private final List<Claim> batch = new ArrayList<>();
+    /**
+     * The verdict of each claim of the batch (null if it is stale), and the slots collected by the batch.
+     */
+    private Player.SCORE_INDICATOR[] verdicts = new Player.SCORE_INDICATOR[0];
+    private final boolean[] collectedSlots;
+    /**
+     * The cards of the set drawn to deal a table that has a set (without a turn timer).
+     */
+    private final int[] setCards;
+
+    /**
+     * Called by a player that claims a set: queues the claim and wakes the dealer up to check it.
+     * @param claim - the claimed set.
+     */
+    public void claim(Claim claim) {
+        claims.add(claim);
+        LockSupport.unpark(dealerThread);
+    }
+
+    private boolean hasClaims() {
+        return !claims.isEmpty();
+    }
     public Dealer(Env env, Table table, Player[] players) {
         this.env = env;
         this.table = table;
         this.players = players;
-        deck = new LinkedList<>(IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList()));
+        deck = new Deck(env.config.deckSize, new Random());
         placeRemoveOrder = IntStream.rangeClosed(0, table.size-1).boxed().collect(Collectors.toList());
+        collectedSlots = new boolean[table.size];
+        setCards = new int[env.config.featureSize];
         hints = env.config.hints;
+        remainingSets = new RemainingSets(env);
+        planner = new LayoutPlanner(env);
     }
     
     private void initializePlayers(){
-        for(Player a : players) {
-            Thread aThread = new Thread(a,""+a.id);
-            aThread.start();
-        }
+        for(Player a : players)
+            Threads.start(env, ""+a.id, a);
+        playersStarted = true;
     }
 
     /**
@@ -94,6 +139,7 @@ public class Dealer implements Runnable {
         while (!shouldFinish()) {
             placeCardsOnTable();
             updateTimerDisplay(true);
+            planNextLayout();
             timerLoop();
             removeAllCardsFromTable();
         }
@@ -121,6 +167,8 @@ public class Dealer implements Runnable {
         // TODO implement
         stopPlayers();
         terminate = true;
+        planner.shutdown();
+        if (dealerThread != null) LockSupport.unpark(dealerThread);
     }
 
     private void stopPlayers(){
@@ -129,8 +177,9 @@ public class Dealer implements Runnable {
             Player a = playersIter.previous();
             try {
                 a.terminate();
-                a.getPlayerThread().interrupt(); 
-                a.getPlayerThread().join();
+                Thread playerThread = a.getPlayerThread();
+                if (playerThread != null) playerThread.interrupt();
+                if (playersStarted) a.awaitTermination();
             } catch (InterruptedException e) {}
         }
     }
@@ -143,6 +192,18 @@ public class Dealer implements Runnable {
     /* 
      * for testing
     */
+    public Deck getDeckT(){
+        return deck;
+    }
+    /* 
+     * for testing
+    */
+    public void removeCardsFromTableT(){
+        removeCardsFromTable();
+    }
+    /* 
+     * for testing
+    */
     public void removeAllCardsFromTableT(){
         removeAllCardsFromTable();
     }
@@ -152,57 +213,92 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        return terminate || env.util.findSets(deck, 1).size() == 0;
+        return terminate || !remainingSets.hasSets();
     }
 
     /**
      * Checks cards should be removed from the table and removes them.
+     * All the pending claims are checked in one pass, in the order they were made, without locking: a claim is stale
+     * if one of its slots changed since it was read, or if an earlier claim of the batch collects one of its slots.
+     * Only the dealer changes cards, so the verdicts still hold when the table is then locked to collect the sets
+     * and return the tokens of the stale claims. The players are told the verdicts last.
      */
     private void removeCardsFromTable() {
-        // TODO implement
-        table.status = Table.STATUS.USING;
-        synchronized (table) {
-            if (!Sets_IDs_To_Check.isEmpty()) {
-                Player t = Sets_IDs_To_Check.poll();
-                // making ann array representation of card coresponding to the slots in set;
-                synchronized (t.currSet) {
-                    if (t.currSet.size() == Player.MAX_SET_SIZE) {
-                        boolean legel_id_sent = true;
-                        for(int i = 0;legel_id_sent && i<Player.MAX_SET_SIZE;i++) {
-                            if(!(table.slotToCard[t.currSet.get(i)] == t.cardArray[i])){
-                                legel_id_sent = false;
-                            }
-                        }
-                        if(legel_id_sent) {
-                                if (env.util.testSet(t.cardArray)) {
-                                    while (!t.currSet.isEmpty()) {
-                                        Integer slot = t.currSet.remove();
-                                        table.removeCard(slot);
-                                        for (Player a : players) {
-                                            a.removeSlot(slot);
-                                        }
-                                    }
-                                    t.score_indicator = Player.SCORE_INDICATOR.Point;
-                                    updateTimerDisplay(true);
-                                }
-                                // if set is not true;
-                                else {
-                                    t.score_indicator = Player.SCORE_INDICATOR.Penalty;
-                                }
-                        }
-                        else {
-                            while(!t.currSet.isEmpty()) {
-                                Integer a = t.currSet.remove();
-                                table.removeToken(t.id, a);
+        if (claims.isEmpty()) return;
+        for (Claim claim = claims.poll(); claim != null; claim = claims.poll())
+            batch.add(claim);
+        batch.sort(Comparator.comparingLong(claim -> claim.sequence));
+        if (verdicts.length < batch.size()) verdicts = new Player.SCORE_INDICATOR[batch.size()];
+
+        boolean collected = false, stale = false;
+        Arrays.fill(collectedSlots, false);
+        for (int c = 0; c < batch.size(); c++) {
+            Claim claim = batch.get(c);
+            verdicts[c] = null;
+            if (!claim.isCurrent(table) || collectsAny(claim)) {
+                stale = true;
+            } else if (claim.isSet(env.util)) {
+                for (int i = 0; i < claim.size(); i++) collectedSlots[claim.slot(i)] = true;
+                verdicts[c] = Player.SCORE_INDICATOR.Point;
+                collected = true;
+            } else {
+                verdicts[c] = Player.SCORE_INDICATOR.Penalty;
+            }
+        }
+
+        if (collected || stale) {
+            table.setStatus(Table.STATUS.USING);
+            table.lockCards();
+            try {
+                for (int c = 0; c < batch.size(); c++) {
+                    Claim claim = batch.get(c);
+                    if (verdicts[c] == Player.SCORE_INDICATOR.Point) {
+                        int[] slots = new int[claim.size()];
+                        for (int i = 0; i < slots.length; i++) {
+                            slots[i] = claim.slot(i);
+                            remainingSets.collect(claim.card(i));
+                            for (Player a : players) {
+                                a.removeSlot(slots[i]);
                             }
                         }
+                        table.removeCards(slots);
+                    } else if (verdicts[c] == null) {
+                        Player t = claim.player;
+                        while (!t.currSet.isEmpty())
+                            table.removeToken(t.id, t.currSet.remove());
                     }
-                    t.set_status = Player.SET_STATUS.CHECKED;
-                    t.currSet.notifyAll();
                 }
+            } finally {
+                table.unlockCards();
             }
         }
-        table.status = Table.STATUS.NOTINUSE;
+
+        for (int c = 0; c < batch.size(); c++) {
+            Player t = batch.get(c).player;
+            t.claimLock.lock();
+            try {
+                if (verdicts[c] != null) t.score_indicator = verdicts[c];
+                t.set_status = Player.SET_STATUS.CHECKED;
+                t.claimChecked.signalAll();
+            } finally {
+                t.claimLock.unlock();
+            }
+        }
+        batch.clear();
+        if (collected) {
+            updateTimerDisplay(true);
+            planNextLayout();
+        }
+        if (collected || stale) table.setStatus(Table.STATUS.NOTINUSE);
+    }
+
+    /**
+     * @return - true iff one of the slots of the claim is collected by an earlier claim of the batch.
+     */
+    private boolean collectsAny(Claim claim) {
+        for (int i = 0; i < claim.size(); i++)
+            if (collectedSlots[claim.slot(i)]) return true;
+        return false;
     }
 
     /**
@@ -210,36 +306,46 @@ public class Dealer implements Runnable {
      */
     private void placeCardsOnTable() {
         // TODO implement
-        table.status = Table.STATUS.USING;
-        synchronized (table) {
+        table.setStatus(Table.STATUS.USING);
+        table.lockCards();
+        try {
             boolean change = false;
             int amountCards = table.countCards();
             if (amountCards != table.size && !deck.isEmpty()) {
+                LayoutPlanner.Layout layout = null;
                 if (amountCards == ZERO) {
                     Collections.shuffle(placeRemoveOrder);
-                    Collections.shuffle(deck);
-                   //System.out.println(TimeUnit.MILLISECONDS.convert(1, TimeUnit.SECONDS));
+                    layout = planner.take(deck.size());
+                    if (layout != null) deck.reset(layout.order);
+                    else deck.shuffle();
+                }
+                int[] cards = new int[Math.min(table.size - amountCards, deck.size())];
+                int[] slots = new int[cards.length];
+                int drawn = ZERO, fromSet = ZERO;
+                if (env.config.turnTimeoutMillis <= TURN_TIME_INDICATOR && !table.existSetsOnTable()) {
+                    fromSet = drawSetCards(setCards);
+                    drawn = Math.min(fromSet, cards.length);
+                    System.arraycopy(setCards, ZERO, cards, ZERO, drawn);
                 }
-                for (int slot = 0; slot < table.size; slot++) {
-                    if (table.slotToCard[placeRemoveOrder.get(slot)] == null) {
-                        if (!deck.isEmpty()) {
-                            int card = deck.remove(ZERO); // like remove first;
-                            table.placeCard(card, placeRemoveOrder.get(slot));
+                while (drawn < cards.length)
+                    cards[drawn++] = deck.draw();
+                for (int slot = 0, placed = 0; slot < table.size; slot++) {
+                    if (!table.hasCard(placeRemoveOrder.get(slot))) {
+                        if (placed < cards.length) {
+                            slots[placed++] = placeRemoveOrder.get(slot);
                             amountCards++;
                         }
                     }
                     change = true;
                 }
+                if (layout != null) table.placeCards(cards, slots, layout.sets);
+                else table.placeCards(cards, slots);
+                if (fromSet > cards.length) replaceCards(setCards, cards.length, fromSet);
                 if(env.config.turnTimeoutMillis<=TURN_TIME_INDICATOR){
-//                    System.out.println("yay " +table.existSetsOnTable());
+                    // drawSetCards found no set in the whole game
                     if(!table.existSetsOnTable()){
                         removeAllCardsFromTable();
-                        if(!shouldFinish()){
-                            placeCardsOnTable();
-                        }
-                        else{
-                            terminate=true;
-                        }
+                        terminate=true;
                     }
                 }
             }
@@ -253,27 +359,172 @@ public class Dealer implements Runnable {
                 table.hints();
                 System.out.println("_______________________________________________________________-");
             }
+        } finally {
+            table.unlockCards();
         }
-        table.status = Table.STATUS.NOTINUSE;
+        table.setStatus(Table.STATUS.NOTINUSE);
     }
 //    }
 
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
+     * Starts preparing the layout of the next round from the cards still in the game, so that the reshuffle at the
+     * end of this round does not have to shuffle and search for sets.
      */
-    private void sleepUntilWokenOrTimeout() {
-        // TODO implement
-        //should sleep for delta time; not implemented yet
-        try {
-            synchronized (this) {
-                if(reshuffleTime-System.currentTimeMillis()>env.config.turnTimeoutWarningMillis+GENERAL_SLEEP_TIME) {
-                    wait(GENERAL_SLEEP_TIME);
-                }
-                else{
-                    wait(WARNING_SLEEP_TIME);
-                }
+    private void planNextLayout() {
+        if (env.config.turnTimeoutMillis <= TURN_TIME_INDICATOR) return;
+        int[] inPlay = new int[table.countCards() + deck.size()];
+        int count = ZERO;
+        for (int slot = 0; slot < table.size; slot++)
+            if (table.hasCard(slot)) inPlay[count++] = table.cardAt(slot);
+        for (int i = 0; i < deck.size(); i++)
+            inPlay[count++] = deck.get(i);
+        planner.plan(inPlay, table.size);
+    }
+
+    /**
+     * Finds a legal set among the cards on the table and in the deck and draws its cards from the deck. Sets of three
+     * are found through the deck's index of its cards: the card completing each pair of cards on the table is looked
+     * up in the deck first, so a single card is drawn whenever one completes the table. Otherwise pairs with one and
+     * then two deck cards are completed. Larger sets are searched one deck card after the other.
+     * @param set - receives the cards of the set drawn from the deck first, then its cards on the table.
+     * @return - the number of cards of the set drawn from the deck (0 if no set is left in the game).
+     * @pre - there is no set on the table.
+     */
+    private int drawSetCards(int[] set) {
+        int[] pool = new int[table.size + deck.size()];
+        int onTable = ZERO;
+        for (int slot = 0; slot < table.size; slot++)
+            if (table.hasCard(slot)) pool[onTable++] = table.cardAt(slot);
+        int len = onTable;
+        for (int i = 0; i < deck.size(); i++) pool[len++] = deck.get(i);
+
+        boolean found = set.length == 3 ? findTriple(pool, onTable, len, set) : findSet(pool, onTable, len, set);
+        if (!found) return ZERO;
+        int fromDeck = ZERO;
+        for (int i = 0; i < set.length; i++) {
+            if (table.slotOf(set[i]) == Table.EMPTY) {
+                int card = set[i];
+                set[i] = set[fromDeck];
+                set[fromDeck++] = card;
+                deck.remove(card);
+            }
+        }
+        return fromDeck;
+    }
+
+    /**
+     * Finds a set of three cards with as few deck cards as possible: the pairs of pool are completed in the order
+     * table-table, table-deck, deck-deck, and the completing card is looked up in the deck.
+     * @param pool    - the cards on the table (first onTable entries), then the cards in the deck.
+     * @param onTable - the number of cards on the table.
+     * @param len     - the number of cards in pool.
+     * @param set     - receives the set.
+     * @return - true iff a set was found.
+     */
+    private boolean findTriple(int[] pool, int onTable, int len, int[] set) {
+        for (int i = 0; i < onTable; i++)
+            for (int j = i + 1; j < onTable; j++)
+                if (complete(pool[i], pool[j], set)) return true;
+        // a table card and a deck card (i on the table), then two deck cards
+        for (int i = 0; i < len; i++)
+            for (int j = Math.max(i + ONE, onTable); j < len; j++)
+                if (complete(pool[i], pool[j], set)) return true;
+        return false;
+    }
+
+    /**
+     * @return - true iff the card completing a and b to a set is in the deck, the set is then stored in set.
+     */
+    private boolean complete(int a, int b, int[] set) {
+        int third = env.util.thirdCard(a, b);
+        if (!deck.contains(third)) return false;
+        set[0] = a;
+        set[1] = b;
+        set[2] = third;
+        return true;
+    }
+
+    /**
+     * Finds a set of any size, made of a deck card and cards before it in pool (the table cards come first).
+     * @param pool    - the cards on the table (first onTable entries), then the cards in the deck.
+     * @param onTable - the number of cards on the table.
+     * @param len     - the number of cards in pool.
+     * @param set     - receives the set.
+     * @return - true iff a set was found.
+     */
+    private boolean findSet(int[] pool, int onTable, int len, int[] set) {
+        for (int i = onTable; i < len; i++) {
+            int found = env.util.findSetsWith(pool[i], pool, i, ONE, cards -> {
+                System.arraycopy(cards, ZERO, set, ZERO, set.length);
+                return false;
+            });
+            if (found > ZERO) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Puts the rest of the cards of a set drawn from the deck on the table in place of cards that are not in the set,
+     * and returns the cards they replace to the deck (when the set needs more deck cards than there were empty slots).
+     * @param set  - the set, as drawn by drawSetCards.
+     * @param from - the index in set of the first card to put on the table.
+     * @param to   - one after the index of the last card to put on the table.
+     */
+    private void replaceCards(int[] set, int from, int to) {
+        int[] slots = new int[to - from];
+        int[] returned = new int[slots.length];
+        int count = ZERO;
+        for (int i = 0; i < table.size && count < slots.length; i++) {
+            int slot = placeRemoveOrder.get(i);
+            if (table.hasCard(slot) && !inSet(set, table.cardAt(slot))) {
+                returned[count] = table.cardAt(slot);
+                slots[count++] = slot;
             }
-        } catch (Exception e) {}
+        }
+        for (int slot : slots)
+            for (Player a : players)
+                a.removeSlot(slot);
+        table.removeCards(slots);
+        table.placeCards(Arrays.copyOfRange(set, from, to), slots);
+        deck.addAll(returned, count);
+    }
+
+    private static boolean inSet(int[] set, int card) {
+        for (int c : set)
+            if (c == card) return true;
+        return false;
+    }
+
+    /**
+     * Sleep until a set is claimed, the timer display changes or the game is terminated.
+     */
+    private void sleepUntilWokenOrTimeout() {
+        long deadline = nextTick(System.currentTimeMillis());
+        while (!terminate && !hasClaims()) {
+            if (deadline == Long.MAX_VALUE) LockSupport.park(this);
+            else if (System.currentTimeMillis() < deadline) LockSupport.parkUntil(this, deadline);
+            else return;
+        }
+    }
+
+    /**
+     * @param now - the current time.
+     * @return - the next time the timer display changes (the reshuffle time at the latest), or Long.MAX_VALUE if
+     * there is no timer.
+     */
+    long nextTick(long now) {
+        if (env.config.turnTimeoutMillis > TURN_TIME_INDICATOR) {
+            long timeLeft = reshuffleTime - now;
+            if (timeLeft <= ZERO) return now;
+            long warnStart = reshuffleTime - env.config.turnTimeoutWarningMillis + ONE;
+            if (now < warnStart) // the whole seconds shown change when the time left drops below a whole second
+                return Math.min(now + timeLeft % SECOND_TICK + ONE, Math.min(warnStart, reshuffleTime));
+            // and so do the hundredths shown in the warning window
+            return Math.min(now + timeLeft % WARNING_TICK + ONE, reshuffleTime);
+        }
+        if (env.config.turnTimeoutMillis == TURN_TIME_INDICATOR)
+            return now + SECOND_TICK - (now - startTime) % SECOND_TICK;
+        return Long.MAX_VALUE;
     }
                 
 
@@ -282,12 +533,8 @@ public class Dealer implements Runnable {
      */
     private void updateTimerDisplay(boolean reset) {
         // TODO implement
-        if(reset){
-            reshuffleTime = Long.MAX_VALUE;
-            startTime = System.currentTimeMillis();
-            if(env.config.turnTimeoutMillis>TURN_TIME_INDICATOR)
-                reshuffleTime = startTime + env.config.turnTimeoutMillis+ ALMOST_SECOND;
-        }
+        if(reset)
+            resetTimer(System.currentTimeMillis());
         if(env.config.turnTimeoutMillis>TURN_TIME_INDICATOR)
         {
             long timeLeft = reshuffleTime-System.currentTimeMillis();
@@ -303,28 +550,43 @@ public class Dealer implements Runnable {
         }
     }
 
+    /**
+     * Restarts the countdown (or the elapsed time) from the given time.
+     * @param now - the current time.
+     */
+    void resetTimer(long now) {
+        reshuffleTime = Long.MAX_VALUE;
+        startTime = now;
+        if(env.config.turnTimeoutMillis>TURN_TIME_INDICATOR)
+            reshuffleTime = startTime + env.config.turnTimeoutMillis+ ALMOST_SECOND;
+    }
+
     /**
      * Returns all the cards from the table to the deck.
      */
     private void removeAllCardsFromTable() {
-        table.status = Table.STATUS.USING;
-        synchronized (table) {
+        table.setStatus(Table.STATUS.USING);
+        table.lockCards();
+        try {
             if (!terminate) {
-                synchronized (table) {
-                    table.removeTokens();
-                    env.ui.removeTokens();
-                    for (int index : placeRemoveOrder) {
-                        try {
-                            if (table.slotToCard[index] != null)
-                                deck.add(table.slotToCard[index]);
-                            table.removeCard(index);
-                        } catch (NullPointerException ignored) {
-                        }
+                table.removeTokens();
+                env.ui.removeTokens();
+                int[] slots = new int[table.countCards()];
+                int[] cards = new int[slots.length];
+                int removed = 0;
+                for (int index : placeRemoveOrder) {
+                    if (table.hasCard(index)) {
+                        cards[removed] = table.cardAt(index);
+                        slots[removed++] = index;
                     }
                 }
+                table.removeCards(slots);
+                deck.addAll(cards, removed);
             }
+        } finally {
+            table.unlockCards();
         }
-        table.status = Table.STATUS.NOTINUSE;
+        table.setStatus(Table.STATUS.NOTINUSE);
     }
 
     /**
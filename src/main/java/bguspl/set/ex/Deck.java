@@ -0,0 +1,194 @@
+package bguspl.set.ex;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * The cards left in the dealer's deck, kept in a ring buffer: cards are drawn from the head and returned to the tail.
+ * An index of the place of each card in the buffer answers whether a card is in the deck, and draws it, in O(1).
+ *
+ * @inv 0 <= size <= cards.length
+ * @inv the deck holds cards[(head + i) % cards.length] for 0 <= i < size, from the head to the tail
+ * @inv indexOf[card] is the index of card in cards if it is in the deck, -1 otherwise
+ */
+public class Deck {
+
+    /**
+     * The ring buffer of cards, large enough to hold every card of the game (grows if more cards are returned).
+     */
+    private int[] cards;
+
+    /**
+     * The index of each card in cards (-1 if the card is not in the deck).
+     */
+    private final int[] indexOf;
+
+    /**
+     * The index in cards of the next card to draw, and the number of cards in the deck.
+     */
+    private int head;
+    private int size;
+
+    /**
+     * The source of randomness for shuffling.
+     */
+    private final Random random;
+
+    /**
+     * Constructor, the deck starts with all the cards in order.
+     *
+     * @param deckSize - the number of cards in the game.
+     * @param random   - the source of randomness for shuffling.
+     */
+    public Deck(int deckSize, Random random) {
+        this.cards = new int[deckSize];
+        this.indexOf = new int[deckSize];
+        this.random = random;
+        for (int card = 0; card < deckSize; ++card) {
+            cards[card] = card;
+            indexOf[card] = card;
+        }
+        size = deckSize;
+    }
+
+    /**
+     * @return - the number of cards in the deck.
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param card - a card id.
+     * @return - true iff the card is in the deck.
+     */
+    public boolean contains(int card) {
+        return indexOf[card] >= 0;
+    }
+
+    /**
+     * @param i - a position in the deck, 0 being the head.
+     * @return - the card in that position.
+     */
+    public int get(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("position " + i + " of " + size);
+        return cards[index(i)];
+    }
+
+    /**
+     * Draws the card at the head of the deck.
+     * @return - the card drawn.
+     * @throws NoSuchElementException - if the deck is empty.
+     *
+     * @post - the deck holds one card less.
+     */
+    public int draw() {
+        if (size == 0) throw new NoSuchElementException("the deck is empty");
+        int card = cards[head];
+        indexOf[card] = -1;
+        head = index(1);
+        --size;
+        return card;
+    }
+
+    /**
+     * Draws a given card from the deck, moving the card at the head to its place.
+     * @param card - the card to draw.
+     * @return - true iff the card was in the deck.
+     */
+    public boolean remove(int card) {
+        int index = indexOf[card];
+        if (index < 0) return false;
+        int first = cards[head];
+        cards[index] = first;
+        indexOf[first] = index;
+        cards[head] = card;
+        draw();
+        return true;
+    }
+
+    /**
+     * Returns a card to the tail of the deck.
+     * @param card - the card to return.
+     *
+     * @post - the card is the last one in the deck.
+     */
+    public void add(int card) {
+        if (size == cards.length) grow(size + 1);
+        int index = index(size++);
+        cards[index] = card;
+        indexOf[card] = index;
+    }
+
+    /**
+     * Returns cards to the tail of the deck, in the given order.
+     * @param returned - the cards to return.
+     * @param len      - the number of cards to return.
+     */
+    public void addAll(int[] returned, int len) {
+        if (size + len > cards.length) grow(size + len);
+        int tail = index(size);
+        int first = Math.min(len, cards.length - tail);
+        System.arraycopy(returned, 0, cards, tail, first);
+        System.arraycopy(returned, first, cards, 0, len - first);
+        for (int i = 0; i < len; ++i)
+            indexOf[returned[i]] = index(size + i);
+        size += len;
+    }
+
+    /**
+     * Replaces the cards in the deck.
+     * @param order - the cards of the new deck, from the head to the tail.
+     */
+    public void reset(int[] order) {
+        if (order.length > cards.length) cards = new int[order.length];
+        System.arraycopy(order, 0, cards, 0, order.length);
+        head = 0;
+        size = order.length;
+        Arrays.fill(indexOf, -1);
+        for (int i = 0; i < size; ++i)
+            indexOf[cards[i]] = i;
+    }
+
+    /**
+     * Shuffles the cards in the deck in place (Fisher-Yates).
+     */
+    public void shuffle() {
+        for (int i = size - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1);
+            int a = index(i), b = index(j);
+            int card = cards[a];
+            cards[a] = cards[b];
+            cards[b] = card;
+            indexOf[cards[a]] = a;
+            indexOf[card] = b;
+        }
+    }
+
+    /**
+     * Moves the cards to a larger buffer, starting at its beginning.
+     * @param capacity - the minimal number of cards the buffer should hold.
+     */
+    private void grow(int capacity) {
+        int[] grown = new int[Math.max(capacity, 2 * cards.length)];
+        for (int i = 0; i < size; ++i) {
+            grown[i] = cards[index(i)];
+            indexOf[grown[i]] = i;
+        }
+        cards = grown;
+        head = 0;
+    }
+
+    /**
+     * @return - the index in cards of a position in the deck.
+     */
+    private int index(int i) {
+        int index = head + i;
+        return index < cards.length ? index : index - cards.length;
+    }
+}
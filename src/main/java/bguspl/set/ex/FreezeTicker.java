@@ -0,0 +1,60 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts down the freeze labels of the frozen players on one scheduler thread shared by all the players. A label is
+ * updated exactly when its whole number of seconds changes, and cleared when the freeze is over, so no thread sleeps
+ * through a freeze.
+ */
+public final class FreezeTicker {
+
+    private static final long SECOND = TimeUnit.SECONDS.toMillis(1);
+
+    /**
+     * The shared scheduler (created on first use).
+     */
+    private static ScheduledExecutorService ticker;
+
+    private FreezeTicker() {}
+
+    /**
+     * Starts counting down a freeze that was just shown on the ui.
+     * @param env    - the game environment objects.
+     * @param player - the frozen player.
+     * @param until  - the time the freeze ends.
+     * @param millis - the length of the freeze.
+     */
+    public static void countDown(Env env, Player player, long until, long millis) {
+        // the next label change is when the remaining time reaches the last whole second below the freeze length
+        long seconds = (millis - 1) / SECOND;
+        schedule(env, player, until, millis - seconds * SECOND);
+    }
+
+    private static void tick(Env env, Player player, long until) {
+        if (player.frozenUntil() != until) return; // frozen again since, that freeze counts down instead
+        long remaining = until - System.currentTimeMillis();
+        long seconds = (remaining + SECOND / 2) / SECOND;
+        if (seconds <= 0) {
+            env.ui.setFreeze(player.id, 0);
+            return;
+        }
+        env.ui.setFreeze(player.id, seconds * SECOND);
+        schedule(env, player, until, remaining - (seconds - 1) * SECOND);
+    }
+
+    private static void schedule(Env env, Player player, long until, long delay) {
+        ticker().schedule(() -> tick(env, player, until), Math.max(0, delay), TimeUnit.MILLISECONDS);
+    }
+
+    private static synchronized ScheduledExecutorService ticker() {
+        if (ticker == null) {
+            ticker = Executors.newSingleThreadScheduledExecutor(Threads.daemon("freeze-ticker"));
+        }
+        return ticker;
+    }
+}
@@ -0,0 +1,86 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded FIFO queue of the slots a player pressed, between a single producer (the ui or the AI thread) and a
+ * single consumer (the player thread). Neither side locks or allocates: presses are dropped when the queue is full.
+ * Pending presses of a slot can be discarded from any thread (e.g. when the dealer removes its card).
+ *
+ * @inv 0 <= tail - head <= entries.length
+ */
+public class KeyQueue {
+
+    /**
+     * The ring buffer: each entry holds a slot and the generation of the slot when it was pressed.
+     */
+    private final long[] entries;
+
+    /**
+     * The number of presses taken by the consumer, and the number of presses added by the producer. Each one is only
+     * written by its own side, and published with lazySet.
+     */
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The generation of each slot, incremented when its pending presses are discarded.
+     */
+    private final AtomicIntegerArray generations;
+
+    /**
+     * @param capacity - the maximal number of pending presses.
+     * @param slots    - the number of slots on the table.
+     */
+    public KeyQueue(int capacity, int slots) {
+        entries = new long[capacity];
+        generations = new AtomicIntegerArray(slots);
+    }
+
+    /**
+     * Adds a press to the tail of the queue (producer only).
+     * @param slot - the slot pressed.
+     * @return - true iff the press was added, false if it was dropped because the queue is full.
+     */
+    public boolean offer(int slot) {
+        long t = tail.get();
+        if (t - head.get() == entries.length) return false;
+        entries[(int) (t % entries.length)] = (long) generations.get(slot) << Integer.SIZE | slot;
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Takes the press at the head of the queue, skipping discarded ones (consumer only).
+     * @return - the slot pressed, or -1 if the queue is empty.
+     */
+    public int poll() {
+        for (long h = head.get(); h != tail.get(); h = head.get()) {
+            long entry = entries[(int) (h % entries.length)];
+            head.lazySet(h + 1);
+            int slot = (int) entry;
+            if ((int) (entry >>> Integer.SIZE) == generations.get(slot)) return slot;
+        }
+        return -1;
+    }
+
+    /**
+     * @return - the number of pending presses (including discarded ones not yet skipped).
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Discards the pending presses of a slot.
+     * @param slot - the slot whose presses to discard.
+     */
+    public void discard(int slot) {
+        generations.incrementAndGet(slot);
+    }
+}
@@ -0,0 +1,121 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class prepares the layout of the next round in the background while the current round is played: the
+ * shuffled order of the cards in the game and the sets among the cards that will be dealt to the table.
+ *
+ * @inv a layout is only handed out if no card was collected since it was planned
+ */
+public class LayoutPlanner {
+
+    /**
+     * The next round prepared in advance.
+     */
+    public static class Layout {
+
+        /**
+         * The cards in the game in the order they should be dealt.
+         */
+        public final int[] order;
+
+        /**
+         * The legal sets among the first cards of order that fill the table.
+         */
+        public final List<int[]> sets;
+
+        private final long generation;
+
+        private Layout(int[] order, List<int[]> sets, long generation) {
+            this.order = order;
+            this.sets = sets;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The background thread that plans the layouts, and its source of randomness.
+     */
+    private final ExecutorService planner;
+    private final Random random = new Random();
+
+    /**
+     * The number of times a layout was requested or invalidated, so that late layouts can be told apart.
+     */
+    private volatile long generation;
+
+    /**
+     * The last layout that was planned (null if none is ready).
+     */
+    private volatile Layout ready;
+
+    public LayoutPlanner(Env env) {
+        this.env = env;
+        this.planner = Executors.newSingleThreadExecutor(Threads.daemon("layout-planner"));
+    }
+
+    /**
+     * Starts planning the next round, dropping any layout planned before.
+     * @param inPlay    - the cards still in the game (the array is not kept).
+     * @param tableSize - the number of slots on the table.
+     */
+    public void plan(int[] inPlay, int tableSize) {
+        long planned = ++generation;
+        ready = null;
+        int[] order = inPlay.clone();
+        planner.execute(() -> {
+            if (planned != generation) return;
+            for (int i = order.length - 1; i > 0; --i) {
+                int j = random.nextInt(i + 1);
+                int card = order[i];
+                order[i] = order[j];
+                order[j] = card;
+            }
+            List<int[]> sets = new ArrayList<>();
+            env.util.findSets(order, Math.min(tableSize, order.length), Integer.MAX_VALUE, set -> sets.add(set.clone()));
+            Layout layout = new Layout(order, Collections.unmodifiableList(sets), planned);
+            if (planned == generation) ready = layout;
+        });
+    }
+
+    /**
+     * Drops the layout being planned, e.g. after cards were collected.
+     */
+    public void invalidate() {
+        ++generation;
+        ready = null;
+    }
+
+    /**
+     * Takes the planned layout, if it is ready.
+     * @param cards - the number of cards in the game.
+     * @return - the layout, or null if it is not ready or was planned for other cards.
+     */
+    public Layout take(int cards) {
+        Layout layout = ready;
+        ready = null;
+        if (layout == null || layout.generation != generation || layout.order.length != cards) return null;
+        return layout;
+    }
+
+    /**
+     * Stops the background thread.
+     */
+    public void shutdown() {
+        invalidate();
+        planner.shutdownNow();
+    }
+}
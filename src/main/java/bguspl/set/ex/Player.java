@@ -1,9 +1,11 @@
 package bguspl.set.ex;
 
 import java.util.LinkedList;
-import java.util.PriorityQueue;
-import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 
 import bguspl.set.Env;
@@ -32,9 +34,9 @@ public class Player implements Runnable {
     public final int id;
 
     /**
-     * The thread representing the current player.
+     * The thread representing the current player (null when it is not running).
      */
-    private Thread playerThread;
+    private volatile Thread playerThread;
     /**
      * @return playerThread;
      */
@@ -45,7 +47,13 @@ public class Player implements Runnable {
     /**
      * The thread of the AI (computer) player (an additional thread used to generate key presses).
      */
-    private Thread aiThread;
+    private volatile Thread aiThread;
+
+    /**
+     * Counted down when the player's thread, and the AI thread of a computer player, are done.
+     */
+    private final CountDownLatch terminated = new CountDownLatch(1);
+    private final CountDownLatch aiTerminated = new CountDownLatch(1);
 
     /**
      * True iff the player is human (not a computer player).
@@ -68,6 +76,11 @@ public class Player implements Runnable {
      * The current score of the player.
      */
     private int score;
+
+    /**
+     * The time until which the player is frozen after a point or a penalty (key presses are rejected until then).
+     */
+    private volatile long frozenUntil;
     /**
      * The dealer of the game.
      */
@@ -77,10 +90,18 @@ public class Player implements Runnable {
     final String name;
 
     final long AI_WAITING_TIME = TimeUnit.SECONDS.toMillis(1);
+    final long AI_IDLE_TIME = 100; // milliseconds, the back-off when there is nothing to press
+    /**
+     * The slots pressed and not handled yet, in the order they were pressed.
+     * @inv keyPressedQueue.size() <= MAX_SET_SIZE
+     */
+    private final KeyQueue keyPressedQueue;
     /**
-     * @inv keyPressedQueue <= 0
+     * Held while a claim of the player is made or checked, claimChecked is signalled by the dealer once it was checked.
+     * Locks and conditions are used instead of monitors so that waiting does not pin a virtual thread.
      */
-    private final Queue<Integer> keyPressedQueue = new PriorityQueue<>();
+    final ReentrantLock claimLock = new ReentrantLock();
+    final Condition claimChecked = claimLock.newCondition();
     /**
      * @inv currSet <= 0
      */
@@ -89,6 +110,11 @@ public class Player implements Runnable {
     SET_STATUS set_status = SET_STATUS.CHECKED;
     SCORE_INDICATOR score_indicator = SCORE_INDICATOR.Idle;
     int[] cardArray =new int[3];
+    /**
+     * The slots of the claimed set and their versions when the cards were read.
+     */
+    private final int[] claimSlots = new int[MAX_SET_SIZE];
+    private final long[] claimSlotVersions = new long[MAX_SET_SIZE];
     enum SCORE_INDICATOR {
         Idle,
         Point,
@@ -114,6 +140,7 @@ public class Player implements Runnable {
         this.human = human;
         this.dealer = dealer;
         this.name = env.config.playerNames[id];
+        this.keyPressedQueue = new KeyQueue(MAX_SET_SIZE, env.config.tableSize);
     }
     /**
      * The main player thread of each player starts here (main loop for the player thread).
@@ -125,85 +152,163 @@ public class Player implements Runnable {
         env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + "starting.");
         if (!human) createArtificialIntelligence();
         while (!terminate) {
+            try {
+                table.awaitNotInUse();
+            } catch (InterruptedException e) {
+                continue;
+            }
             if (table.status == Table.STATUS.NOTINUSE) {
-                synchronized (keyPressedQueue) {
-                    giveScore();
-                    while(keyPressedQueue.isEmpty() & !terminate) {
-                        try {keyPressedQueue.wait();} catch (InterruptedException e) {}
-                    }
-                    while (!keyPressedQueue.isEmpty()) {
-                        Integer last_key = keyPressedQueue.poll();
-                        if (currSet.size() == MAX_SET_SIZE && set_status == SET_STATUS.CHECKED) {
+                giveScore();
+                while(keyPressedQueue.isEmpty() & !terminate) {
+                    LockSupport.park(this);
+                    Thread.interrupted();
+                }
+                for (int last_key = keyPressedQueue.poll(); last_key >= 0; last_key = keyPressedQueue.poll()) {
+                    if (isFrozen()) continue; // pressed before the freeze
+                    if (currSet.size() == MAX_SET_SIZE && set_status == SET_STATUS.CHECKED) {
+                        table.lockSlot(last_key);
+                        try {
+                            if (currSet.remove((Integer) last_key))
+                                table.removeToken(id, last_key);
+                        } finally {
+                            table.unlockSlot(last_key);
+                        }
+                    } else if (currSet.size() < MAX_SET_SIZE) {
+                        table.lockSlot(last_key);
+                        try {
                             if (currSet.remove((Integer) last_key)) {
-                                synchronized (table) {
-                                    table.removeToken(id, last_key);
-                                }
+                                table.removeToken(id, last_key);
+                            } else {
+                                table.placeToken(id, last_key);
+                                // System.out.println(id +" is inputing "+ last_key);
+                                currSet.add(last_key);
                             }
-                        } else if (currSet.size() < MAX_SET_SIZE) {
-                            synchronized (table) {
-                                if (currSet.remove((Integer) last_key)) {
-                                    table.removeToken(id, last_key);
-                                } else {
-                                    table.placeToken(id, last_key);
-                                    // System.out.println(id +" is inputing "+ last_key);
-                                    currSet.add(last_key);
-                                }
-                            }
-                            if (currSet.size() == MAX_SET_SIZE)
-                                set_status = SET_STATUS.UNCHECKED;
-
+                        } finally {
+                            table.unlockSlot(last_key);
                         }
+                        if (currSet.size() == MAX_SET_SIZE)
+                            set_status = SET_STATUS.UNCHECKED;
+
                     }
-                    keyPressedQueue.notifyAll();
                 }
+                LockSupport.unpark(aiThread); // there is room for more key presses
                 if (currSet.size() == MAX_SET_SIZE && set_status == SET_STATUS.UNCHECKED &!terminate) {
-                    synchronized (currSet) {
-                        try {
-                            cardArray = currSet.stream().mapToInt(i -> table.slotToCard[i]).toArray();
-                            dealer.Sets_IDs_To_Check.add(this);
-                            dealer.getDealerThread().interrupt();
-                            currSet.wait();
-                        }catch(NullPointerException e){cardArray = new int[3];set_status = SET_STATUS.CHECKED;}
-                        catch (InterruptedException e) {}
-                        finally {
-                            if (!human){aiThread.interrupt();}
-                        }
+                    claimLock.lock();
+                    try {
+                        Claim claim = readClaim();
+                        if (claim != null) {
+                            dealer.claim(claim);
+                            while (set_status == SET_STATUS.UNCHECKED && !terminate)
+                                claimChecked.await();
+                        } else set_status = SET_STATUS.CHECKED;
+                    }
+                    catch (InterruptedException e) {}
+                    finally {
+                        claimLock.unlock();
+                        interruptAi();
                     }
                 }
             }
         }
-        if (!human) try {aiThread.join(); } catch (InterruptedException ignored) {}
+        if (!human) try {aiTerminated.await(); } catch (InterruptedException ignored) {}
         env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
         // System.out.println("Thread " + Thread.currentThread().getName() + " terminated.");
+        playerThread = null;
+        terminated.countDown();
+    }
+
+    /**
+     * Waits until the player's thread is done (after terminate).
+     * @throws InterruptedException - if the waiting thread is interrupted.
+     */
+    public void awaitTermination() throws InterruptedException {
+        terminated.await();
+    }
+
+    private void interruptAi() {
+        Thread ai = aiThread;
+        if (ai != null) ai.interrupt();
+    }
+
+    /**
+     * Reads a snapshot of the cards in the slots of currSet into cardArray, so the dealer can later tell whether the
+     * claim is still current.
+     * @return the claim of the set, or null if one of the slots has no card.
+     */
+    private Claim readClaim() {
+        int i = 0;
+        for (int slot : currSet) claimSlots[i++] = slot;
+        long version = table.snapshot(claimSlots, i, cardArray, claimSlotVersions);
+        if (version == Table.EMPTY) return null;
+        return new Claim(this, claimSlots, cardArray, claimSlotVersions, version);
     }
 
     /**
      * Creates an additional thread for an AI (computer) player. The main loop of this thread repeatedly generates
-     * key presses. If the queue of key presses is full, the thread waits until it is not full.
+     * key presses, chosen by the configured AiStrategy. If the queue of key presses is full, the thread waits until
+     * it is not full.
      */
     private void createArtificialIntelligence() {
         // note: this is a very very smart AI (!)
-        aiThread = new Thread(() -> {
-            env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " starting.");
-            // System.out.println("Thread " + Thread.currentThread().getName() + " starting.");
-            while (!terminate) {
-                // TODO implement player key press simulator
-                int key = (int)(Math.random()* table.size);
-                keyPressed(key);
-                if(env.config.tableDelayMillis> dealer.ZERO && currSet.size() <MAX_SET_SIZE) {
-                    synchronized (this) {
-                        try {wait(AI_WAITING_TIME);} catch (InterruptedException ignored) {}
-                    }
-                }
-                while (!terminate && keyPressedQueue.size()==MAX_SET_SIZE && currSet.size() == MAX_SET_SIZE && set_status == SET_STATUS.UNCHECKED) {
-                    synchronized (keyPressedQueue) {
-                        try {keyPressedQueue.wait();} catch (InterruptedException ignored) {}
-                    }
+        Threads.start(env, "computer-" + id, () -> {
+            aiThread = Thread.currentThread();
+            try {
+                generateKeyPresses();
+            } finally {
+                aiThread = null;
+                aiTerminated.countDown();
+            }
+        });
+    }
+
+    /**
+     * The main loop of the AI thread.
+     */
+    private void generateKeyPresses() {
+        env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " starting.");
+        // System.out.println("Thread " + Thread.currentThread().getName() + " starting.");
+        AiStrategy strategy = AiStrategy.create(env, table, id);
+        int[] keys = new int[table.size + env.config.featureSize];
+        while (!terminate) {
+            try {
+                table.awaitNotInUse();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (isFrozen()) {
+                LockSupport.parkUntil(this, frozenUntil);
+                Thread.interrupted();
+                continue;
+            }
+            int len = strategy.plan(keys);
+            if (len == 0) { // no set on the table, or the claim is already placed: let the table change first
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(AI_IDLE_TIME));
+                Thread.interrupted();
+                continue;
+            }
+            long reaction = strategy.reactionMillis();
+            if (reaction > 0) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(reaction));
+                Thread.interrupted();
+                if (!strategy.isCurrent()) continue; // the table changed while reacting, plan again
+            }
+            for (int i = 0; i < len && !terminate; i++) {
+                while (!terminate && keyPressedQueue.size() == MAX_SET_SIZE) {
+                    LockSupport.park(this); // until the player handled the previous keys
+                    Thread.interrupted();
                 }
+                keyPressed(keys[i]);
+            }
+            if(env.config.tableDelayMillis> dealer.ZERO && currSet.size() <MAX_SET_SIZE) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(AI_WAITING_TIME));
+                Thread.interrupted(); // woken up by the player
+            }
+            while (!terminate && keyPressedQueue.size()==MAX_SET_SIZE && currSet.size() == MAX_SET_SIZE && set_status == SET_STATUS.UNCHECKED) {
+                LockSupport.park(this);
+                Thread.interrupted();
             }
-            env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
-        }, "computer-" + id);
-        aiThread.start();
+        }
+        env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
     }
 
     /**
@@ -212,11 +317,11 @@ public class Player implements Runnable {
     public void terminate()  {
         // TODO implement
         terminate = true;
-        if(!human){try{aiThread.interrupt();}catch(NullPointerException ignored){}}
+        if(!human) interruptAi();
     }
     public void removeSlot(Integer slot){
         currSet.remove(slot);
-        keyPressedQueue.remove(slot);
+        keyPressedQueue.discard(slot);
 
     }
     /**
@@ -229,14 +334,8 @@ public class Player implements Runnable {
     public void keyPressed(int slot) {
         // TODO implement
         //not good
-        if(table.status == Table.STATUS.NOTINUSE) {
-            synchronized (keyPressedQueue) {
-                if (keyPressedQueue.size() < MAX_SET_SIZE) {
-                    keyPressedQueue.add(slot);
-                    keyPressedQueue.notifyAll();
-                }
-            }
-        }
+        if(table.status == Table.STATUS.NOTINUSE && !isFrozen() && keyPressedQueue.offer(slot))
+            LockSupport.unpark(playerThread);
     }
 
     /**
@@ -247,11 +346,7 @@ public class Player implements Runnable {
      */
     public void point() {
         // TODO implement
-        try {
-            env.ui.setFreeze(id,env.config.pointFreezeMillis);
-            Thread.sleep(env.config.pointFreezeMillis);
-        } catch (InterruptedException ignored) {}
-        env.ui.setFreeze(id,0);
+        freeze(env.config.pointFreezeMillis);
         int ignored = table.countCards(); // this part is just for demonstration in the unit tests
         env.ui.setScore(id, ++score);
         score_indicator = SCORE_INDICATOR.Idle;
@@ -262,11 +357,7 @@ public class Player implements Runnable {
      */
     public void penalty() {
         // TODO implement
-        try {
-            env.ui.setFreeze(id,env.config.penaltyFreezeMillis);
-            Thread.sleep(env.config.penaltyFreezeMillis);
-        } catch (InterruptedException ignored) {}
-        env.ui.setFreeze(id,0);
+        freeze(env.config.penaltyFreezeMillis);
         score_indicator = SCORE_INDICATOR.Idle;
 
     }
@@ -283,6 +374,28 @@ public class Player implements Runnable {
             }
         }
 
+    /**
+     * Freezes the player without blocking its thread, the freeze label counts down on the shared FreezeTicker.
+     * @param millis - the length of the freeze.
+     */
+    private void freeze(long millis) {
+        long until = System.currentTimeMillis() + millis;
+        frozenUntil = until;
+        env.ui.setFreeze(id, millis);
+        if (millis > 0) FreezeTicker.countDown(env, this, until, millis);
+    }
+
+    /**
+     * @return the time until which the player is frozen.
+     */
+    long frozenUntil() {
+        return frozenUntil;
+    }
+
+    boolean isFrozen() {
+        return System.currentTimeMillis() < frozenUntil;
+    }
+
     public int getScore() {
         return score;
     }
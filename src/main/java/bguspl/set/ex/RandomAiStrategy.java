@@ -0,0 +1,33 @@
+package bguspl.set.ex;
+
+import java.util.Random;
+
+/**
+ * Presses one random slot at a time, without reacting to the table.
+ */
+public class RandomAiStrategy implements AiStrategy {
+
+    private final Table table;
+    private final Random random;
+
+    public RandomAiStrategy(Table table, Random random) {
+        this.table = table;
+        this.random = random;
+    }
+
+    @Override
+    public int plan(int[] keys) {
+        keys[0] = (int) (random.nextDouble() * table.size);
+        return 1;
+    }
+
+    @Override
+    public long reactionMillis() {
+        return 0;
+    }
+
+    @Override
+    public boolean isCurrent() {
+        return true; // any slot is as good as any other
+    }
+}
@@ -0,0 +1,88 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.Arrays;
+
+/**
+ * This class keeps track of the number of legal sets that can still be collected, i.e. the sets made of cards that
+ * are still in the game (in the deck or on the table).
+ *
+ * @inv inPlay[position[x]] == x iff card x is still in the game
+ * @inv count == the number of legal sets among inPlay[0..size-1]
+ */
+public class RemainingSets {
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The cards that are still in the game (the first size entries).
+     */
+    private final int[] inPlay;
+
+    /**
+     * Mapping between a card and its index in inPlay (-1 if it was collected).
+     */
+    private final int[] position;
+
+    /**
+     * The number of cards still in the game.
+     */
+    private int size;
+
+    /**
+     * The number of legal sets among the cards still in the game.
+     */
+    private int count;
+
+    /**
+     * Constructor, all the cards of the deck start in the game.
+     *
+     * @param env - the game environment objects.
+     */
+    public RemainingSets(Env env) {
+        this.env = env;
+        inPlay = new int[env.config.deckSize];
+        position = new int[env.config.deckSize];
+        Arrays.setAll(inPlay, card -> card);
+        Arrays.setAll(position, card -> card);
+        size = inPlay.length;
+        count = env.util.countSets(inPlay, size);
+    }
+
+    /**
+     * Takes a card out of the game (after it was collected as part of a set).
+     * @param card - the collected card.
+     *
+     * @post - count no longer includes the sets that contain the card.
+     */
+    public void collect(int card) {
+        int index = position[card];
+        if (index < 0) return;
+
+        // move the last card to the freed place
+        int last = inPlay[--size];
+        inPlay[index] = last;
+        position[last] = index;
+        position[card] = -1;
+
+        count -= env.util.findSetsWith(card, inPlay, size, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * @return the number of legal sets that can still be collected.
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * @return true iff there is at least one legal set that can still be collected.
+     */
+    public boolean hasSets() {
+        return count > 0;
+    }
+}
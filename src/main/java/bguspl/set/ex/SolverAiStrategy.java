@@ -0,0 +1,169 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Finds a legal set on the table and presses its slots after a reaction time drawn from a normal distribution, going
+ * for the sets that include the most of the player's tokens, and leaving a set the player already claimed alone. With
+ * the configured error rate, one of the slots is replaced with another slot that holds a card, so the claim is wrong
+ * (the other cards of a set determine its last card).
+ */
+public class SolverAiStrategy implements AiStrategy {
+
+    private final Env env;
+    private final Table table;
+    private final int player;
+    private final Random random;
+
+    /**
+     * Buffers for reading the table: all the slots, the card in each one and their versions.
+     */
+    private final int[] slots;
+    private final int[] cards;
+    private final long[] versions;
+
+    /**
+     * The cards on the table and the slot of each one.
+     */
+    private final int[] onTable;
+    private final int[] onTableSlots;
+
+    /**
+     * The cards under the player's tokens.
+     */
+    private final int[] tokened;
+    private int tokens;
+
+    /**
+     * The cards of the chosen set and the slots to hold tokens on.
+     */
+    private final int[] setCards;
+    private final int[] target;
+
+    /**
+     * The slots of the last plan and their versions when the table was read.
+     */
+    private final int[] planned;
+    private final long[] plannedVersions;
+    private int plannedLen;
+
+    public SolverAiStrategy(Env env, Table table, int player, Random random) {
+        this.env = env;
+        this.table = table;
+        this.player = player;
+        this.random = random;
+        slots = new int[table.size];
+        for (int slot = 0; slot < slots.length; ++slot) slots[slot] = slot;
+        cards = new int[table.size];
+        versions = new long[table.size];
+        onTable = new int[table.size];
+        onTableSlots = new int[table.size];
+        tokened = new int[table.size];
+        setCards = new int[env.config.featureSize];
+        target = new int[env.config.featureSize];
+        planned = new int[table.size + env.config.featureSize];
+        plannedVersions = new long[planned.length];
+    }
+
+    @Override
+    public int plan(int[] keys) {
+        table.snapshot(slots, slots.length, cards, versions);
+        int count = 0;
+        for (int slot = 0; slot < cards.length; ++slot) {
+            if (cards[slot] == Table.EMPTY) continue;
+            onTable[count] = cards[slot];
+            onTableSlots[count++] = slot;
+        }
+
+        tokens = 0;
+        for (int j = 0; j < count; ++j)
+            if (table.hasToken(player, onTableSlots[j])) tokened[tokens++] = onTable[j];
+        if (tokens == setCards.length && env.util.testSet(Arrays.copyOf(tokened, tokens)))
+            return plannedLen = 0; // the tokens are a set, claimed already or about to be
+
+        // choose one of the sets with the most tokens already on them uniformly (reservoir sampling), so computer
+        // players do not all go for the same one
+        int[] seen = {0}, best = {-1};
+        env.util.findSets(onTable, count, Integer.MAX_VALUE, set -> {
+            int overlap = tokensOn(set);
+            if (overlap > best[0]) {
+                best[0] = overlap;
+                seen[0] = 0;
+            }
+            if (overlap == best[0] && random.nextInt(++seen[0]) == 0)
+                System.arraycopy(set, 0, setCards, 0, setCards.length);
+            return true;
+        });
+        if (seen[0] == 0) return plannedLen = 0;
+
+        for (int i = 0; i < target.length; ++i)
+            for (int j = 0; j < count; ++j)
+                if (onTable[j] == setCards[i]) target[i] = onTableSlots[j];
+        if (random.nextDouble() < env.config.aiErrorRate) makeMistake(count);
+
+        // remove the tokens that are not part of the target, then place the missing ones
+        int len = 0;
+        for (int slot = 0; slot < table.size; ++slot)
+            if (table.hasToken(player, slot) && !isTarget(slot)) keys[len++] = slot;
+        for (int slot : target)
+            if (!table.hasToken(player, slot)) keys[len++] = slot;
+
+        // keep the versions of the planned slots, so isCurrent can tell if another player took the set meanwhile
+        for (int i = 0; i < len; ++i) {
+            planned[i] = keys[i];
+            plannedVersions[i] = versions[keys[i]];
+        }
+        plannedLen = len;
+        return len;
+    }
+
+    @Override
+    public boolean isCurrent() {
+        return table.isCurrent(planned, plannedLen, plannedVersions);
+    }
+
+    /**
+     * Replaces a random slot of the target with a random slot outside of it that holds a card, so the mistake is a
+     * claim the dealer penalizes (and not a press on an empty slot, which is never claimed).
+     * @param count - the number of cards on the table (in onTableSlots).
+     */
+    private void makeMistake(int count) {
+        int others = count - target.length;
+        if (others <= 0) return;
+        int skip = random.nextInt(others);
+        for (int i = 0; i < count; ++i) {
+            int slot = onTableSlots[i];
+            if (isTarget(slot)) continue;
+            if (skip-- == 0) {
+                target[random.nextInt(target.length)] = slot;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return - the number of cards of the set that hold one of the player's tokens.
+     */
+    private int tokensOn(int[] set) {
+        int overlap = 0;
+        for (int card : set)
+            for (int i = 0; i < tokens; ++i)
+                if (tokened[i] == card) ++overlap;
+        return overlap;
+    }
+
+    private boolean isTarget(int slot) {
+        for (int t : target)
+            if (t == slot) return true;
+        return false;
+    }
+
+    @Override
+    public long reactionMillis() {
+        double reaction = env.config.aiReactionMeanMillis + env.config.aiReactionStdDevMillis * random.nextGaussian();
+        return Math.max(0, Math.round(reaction));
+    }
+}
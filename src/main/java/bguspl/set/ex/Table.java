@@ -2,16 +2,25 @@ package bguspl.set.ex;
 
 import bguspl.set.Env;
 
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 import java.util.stream.Collectors;
 
 /**
  * This class contains the data that is visible to the player.
  *
  * @inv slotToCard[x] == y iff cardToSlot[y] == x
+ * @inv cardCount == the number of slots x with slotToCard[x] != EMPTY
+ * @inv cards only change while the write lock is held (lockCards), tokens on a slot only while that slot is held
+ * (lockSlot) or the write lock is held
  */
 public class Table {
 
@@ -21,26 +30,76 @@ public class Table {
     private final Env env;
 
     /**
-     * Mapping between a slot and the card placed in it (null if none).
+     * The value of an empty entry in slotToCard and cardToSlot.
      */
-    protected final Integer[] slotToCard; // card per slot (if any)
+    public static final int EMPTY = -1;
 
     /**
-     * Mapping between a card and the slot it is in (null if none).
+     * Mapping between a slot and the card placed in it (EMPTY if none).
      */
-    protected final Integer[] cardToSlot; // slot per card (if any)
+    protected final int[] slotToCard; // card per slot (if any)
+
+    /**
+     * Mapping between a card and the slot it is in (EMPTY if none).
+     */
+    protected final int[] cardToSlot; // slot per card (if any)
+
+    /**
+     * The number of cards currently on the table.
+     */
+    private int cardCount;
 
     // added by us
     public final int size;
     /**
-     * A boolean matrix representation of placed tokens for each player.
-     * playerTokenGrid = boolean[amount of players][table size].
+     * The tokens of each player as a bitmask of slots: slot x is bit x % 64 of playerTokens[player][x / 64].
+     */
+    protected final long[][] playerTokens;
+    /**
+     * The owners of the tokens on each slot as a bitmask of players: player x is bit x % 64 of slotTokens[slot][x / 64].
+     */
+    protected final long[][] slotTokens;
+    /**
+     * Guards the cards on the table: token operations share it (read lock), while dealing, collecting and returning
+     * cards own the whole table (write lock).
      */
-    protected boolean[][] playerTokenGrid;
+    private final ReentrantReadWriteLock cardsLock = new ReentrantReadWriteLock();
     /**
-     * enum representing the using status of the table.
+     * One lock per slot, guarding the tokens on that slot.
      */
-    STATUS status = STATUS.USING;
+    private final ReentrantLock[] slotLocks;
+    /**
+     * Sequence lock over the cards on the table, letting readers take a consistent snapshot without blocking
+     * (optimistic reads are retried if a card changed meanwhile).
+     */
+    private final StampedLock versionLock = new StampedLock();
+    /**
+     * The version of the table, incremented whenever a card is placed or removed.
+     */
+    private long version;
+    /**
+     * The version of each slot, incremented whenever a card is placed in or removed from the slot.
+     */
+    private final long[] slotVersions;
+    /**
+     * Plays the ui updates of placed and removed cards, one table delay apart (created on the first delayed update).
+     */
+    private ExecutorService animator;
+    private final Object animations = new Object();
+    /**
+     * Buffer for the cards currently on the table, used for set queries.
+     */
+    private final int[] tableCards;
+    /**
+     * The legal sets currently on the table, kept up to date as cards are placed and removed.
+     */
+    private final List<int[]> setsOnTable = new ArrayList<>();
+    /**
+     * enum representing the using status of the table, changed by the dealer through setStatus.
+     */
+    volatile STATUS status = STATUS.USING;
+    private final ReentrantLock statusLock = new ReentrantLock();
+    private final Condition statusChanged = statusLock.newCondition();
     enum STATUS{
         USING,
         NOTINUSE;
@@ -52,16 +111,23 @@ public class Table {
      * Constructor for testing.
      *
      * @param env        - the game environment objects.
-     * @param slotToCard - mapping between a slot and the card placed in it (null if none).
-     * @param cardToSlot - mapping between a card and the slot it is in (null if none).
+     * @param slotToCard - mapping between a slot and the card placed in it (EMPTY if none).
+     * @param cardToSlot - mapping between a card and the slot it is in (EMPTY if none).
      */
-    public Table(Env env, Integer[] slotToCard, Integer[] cardToSlot) {
+    public Table(Env env, int[] slotToCard, int[] cardToSlot) {
 
         this.env = env;
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
         this.size = env.config.rows*env.config.columns;
-        this.playerTokenGrid = new boolean[env.config.players][env.config.rows*env.config.columns];
+        this.playerTokens = new long[env.config.players][words(size)];
+        this.slotTokens = new long[size][words(env.config.players)];
+        this.slotVersions = new long[size];
+        this.slotLocks = new ReentrantLock[size];
+        Arrays.setAll(slotLocks, slot -> new ReentrantLock());
+        this.tableCards = new int[slotToCard.length];
+        this.cardCount = copyTableCards();
+        env.util.findSets(tableCards, cardCount, Integer.MAX_VALUE, set -> setsOnTable.add(set.clone()));
     }
 
     /**
@@ -71,15 +137,57 @@ public class Table {
      */
     public Table(Env env) {
 
-        this(env, new Integer[env.config.tableSize], new Integer[env.config.deckSize]);
+        this(env, emptyArray(env.config.tableSize), emptyArray(env.config.deckSize));
+    }
+
+    private static int words(int bits) {
+        return (bits + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    private static int[] emptyArray(int length) {
+        int[] array = new int[length];
+        Arrays.fill(array, EMPTY);
+        return array;
+    }
+
+    /**
+     * Takes the whole table for changing the cards on it (waits for the token operations in progress to finish).
+     */
+    public void lockCards() {
+        cardsLock.writeLock().lock();
+    }
+
+    /**
+     * Releases the table taken by lockCards.
+     */
+    public void unlockCards() {
+        cardsLock.writeLock().unlock();
+    }
+
+    /**
+     * Takes a slot for placing or removing tokens on it: token operations on other slots may run at the same time,
+     * but the cards on the table do not change until unlockSlot is called.
+     * @param slot - the slot to take.
+     */
+    public void lockSlot(int slot) {
+        cardsLock.readLock().lock();
+        slotLocks[slot].lock();
+    }
+
+    /**
+     * Releases a slot taken by lockSlot.
+     * @param slot - the slot to release.
+     */
+    public void unlockSlot(int slot) {
+        slotLocks[slot].unlock();
+        cardsLock.readLock().unlock();
     }
 
     /**
      * This method prints all possible legal sets of cards that are currently on the table.
      */
     public void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
+        setsOnTable.forEach(set -> {
             StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
             List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
             int[][] features = env.util.cardsToFeatures(set);
@@ -87,17 +195,50 @@ public class Table {
         });
     }
 
+    /**
+     * Copies the cards currently on the table to the tableCards buffer.
+     *
+     * @return - the number of cards copied.
+     */
+    private int copyTableCards() {
+        int len = 0;
+        for (int card : slotToCard)
+            if (card != EMPTY)
+                tableCards[len++] = card;
+        return len;
+    }
+
     /**
      * Count the number of cards currently on the table.
      *
      * @return - the number of cards on the table.
      */
     public int countCards() {
-        int cards = 0;
-        for (Integer card : slotToCard)
-            if (card != null)
-                ++cards;
-        return cards;
+        return cardCount;
+    }
+
+    /**
+     * @param slot - a slot on the table.
+     * @return - the card placed in the slot, or EMPTY if none.
+     */
+    public int cardAt(int slot) {
+        return slotToCard[slot];
+    }
+
+    /**
+     * @param card - a card id.
+     * @return - the slot the card is placed in, or EMPTY if it is not on the table.
+     */
+    public int slotOf(int card) {
+        return cardToSlot[card];
+    }
+
+    /**
+     * @param slot - a slot on the table.
+     * @return - true iff there is a card in the slot.
+     */
+    public boolean hasCard(int slot) {
+        return slotToCard[slot] != EMPTY;
     }
 
     /**
@@ -108,33 +249,263 @@ public class Table {
      * @post - the card placed is on the table, in the assigned slot.
      */
     public void placeCard(int card, int slot) {
+        placeCards(new int[]{card}, new int[]{slot});
+    }
+
+    /**
+     * Places cards on the table at once. The cards are on the table as soon as this returns, while the ui shows them
+     * one table delay after the other.
+     * @param cards - the card ids to place.
+     * @param slots - the slot in which each card should be placed.
+     *
+     * @post - each card placed is on the table, in its assigned slot.
+     */
+    public void placeCards(int[] cards, int[] slots) {
+        long stamp = versionLock.writeLock();
         try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {}
+            for (int i = 0; i < cards.length; ++i) {
+                int card = cards[i], slot = slots[i];
+                int previous = slotToCard[slot];
+                if (previous != EMPTY) {
+                    dropSetsOf(previous);
+                    cardToSlot[previous] = EMPTY;
+                    slotToCard[slot] = EMPTY;
+                    --cardCount;
+                }
+                // only the sets completed by the new card are new on the table
+                env.util.findSetsWith(card, tableCards, copyTableCards(), Integer.MAX_VALUE, set -> setsOnTable.add(set.clone()));
 
-        cardToSlot[card] = slot;
-        slotToCard[slot] = card;
-        env.ui.placeCard(card,slot);
+                cardToSlot[card] = slot;
+                slotToCard[slot] = card;
+                ++cardCount;
+                ++slotVersions[slot];
+            }
+            ++version;
+        } finally {
+            versionLock.unlockWrite(stamp);
+        }
+        for (int i = 0; i < cards.length; ++i) {
+            int card = cards[i], slot = slots[i];
+            animate(() -> env.ui.placeCard(card, slot));
+        }
+    }
 
-        // TODO implement
+    /**
+     * Deals cards to an empty table, using sets that were already found among them instead of searching.
+     * @param cards - the card ids to place.
+     * @param slots - the slot in which each card should be placed.
+     * @param sets  - the legal sets among the cards.
+     * @pre - the table is empty.
+     *
+     * @post - each card placed is on the table, in its assigned slot.
+     */
+    public void placeCards(int[] cards, int[] slots, List<int[]> sets) {
+        long stamp = versionLock.writeLock();
+        try {
+            if (cardCount != 0) throw new IllegalStateException("the table is not empty");
+            for (int i = 0; i < cards.length; ++i) {
+                cardToSlot[cards[i]] = slots[i];
+                slotToCard[slots[i]] = cards[i];
+                ++slotVersions[slots[i]];
+            }
+            cardCount = cards.length;
+            setsOnTable.addAll(sets);
+            ++version;
+        } finally {
+            versionLock.unlockWrite(stamp);
+        }
+        for (int i = 0; i < cards.length; ++i) {
+            int card = cards[i], slot = slots[i];
+            animate(() -> env.ui.placeCard(card, slot));
+        }
     }
 
     /**
-     * Removes a card from a grid slot on the table.
+     * Removes a card from a grid slot on the table (nothing happens if the slot is empty).
      * @param slot - the slot from which to remove the card.
      */
     public void removeCard(int slot) {
+        removeCards(new int[]{slot});
+    }
+
+    /**
+     * Removes cards from the table at once (empty slots are skipped), together with the tokens placed on them. The
+     * ui removes the cards one table delay after the other.
+     * @param slots - the slots from which to remove the cards.
+     */
+    public void removeCards(int[] slots) {
+        long stamp = versionLock.writeLock();
         try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {}
-        int card = slotToCard[slot];
-        cardToSlot[card] = null;
-        slotToCard[slot] = null;
-        env.ui.removeCard(slot);
-        for(int i = 0; i<playerTokenGrid.length;i++){
-            removeToken(i,slot);
+            for (int slot : slots) {
+                int card = slotToCard[slot];
+                if (card == EMPTY) continue;
+                dropSetsOf(card);
+                cardToSlot[card] = EMPTY;
+                slotToCard[slot] = EMPTY;
+                --cardCount;
+                ++slotVersions[slot];
+            }
+            ++version;
+        } finally {
+            versionLock.unlockWrite(stamp);
+        }
+        for (int slot : slots) {
+            for (int player = nextTokenOwner(slot, 0); player >= 0; player = nextTokenOwner(slot, player + 1))
+                removeToken(player, slot);
+            animate(() -> env.ui.removeCard(slot));
+        }
+    }
+
+    /**
+     * Shows a change of the cards on the ui after the table delay, without holding up the caller. Changes are shown
+     * in the order they were made.
+     * @param update - the ui update to make.
+     */
+    private void animate(Runnable update) {
+        if (env.config.tableDelayMillis <= 0) {
+            update.run();
+            return;
+        }
+        synchronized (animations) {
+            if (animator == null) {
+                animator = Executors.newSingleThreadExecutor(Threads.daemon("table-animator"));
+            }
+            animator.execute(() -> {
+                try {
+                    Thread.sleep(env.config.tableDelayMillis);
+                } catch (InterruptedException ignored) {}
+                update.run();
+            });
+        }
+    }
+
+    /**
+     * Sets the using status of the table, waking up the players waiting for it if it is no longer in use.
+     * @param status - the new status.
+     */
+    void setStatus(STATUS status) {
+        statusLock.lock();
+        try {
+            this.status = status;
+            if (status == STATUS.NOTINUSE) statusChanged.signalAll();
+        } finally {
+            statusLock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until the dealer is not using the table.
+     * @throws InterruptedException - if the thread is interrupted while waiting.
+     */
+    void awaitNotInUse() throws InterruptedException {
+        if (status == STATUS.NOTINUSE) return;
+        statusLock.lock();
+        try {
+            while (status != STATUS.NOTINUSE) statusChanged.await();
+        } finally {
+            statusLock.unlock();
+        }
+    }
+
+    /**
+     * Reads the cards in the given slots, their versions and the table version as one consistent snapshot, without
+     * locking.
+     * @param slots    - the slots to read.
+     * @param len      - the number of slots to read.
+     * @param cards    - receives the card in each slot.
+     * @param versions - receives the version of each slot.
+     * @return - the version of the table the snapshot was taken at, or EMPTY if one of the slots has no card.
+     */
+    public long snapshot(int[] slots, int len, int[] cards, long[] versions) {
+        long stamp = versionLock.tryOptimisticRead();
+        long snapshot = readSlots(slots, len, cards, versions);
+        if (!versionLock.validate(stamp)) {
+            // a card changed while reading, read again holding the lock
+            stamp = versionLock.readLock();
+            try {
+                snapshot = readSlots(slots, len, cards, versions);
+            } finally {
+                versionLock.unlockRead(stamp);
+            }
+        }
+        return snapshot;
+    }
+
+    private long readSlots(int[] slots, int len, int[] cards, long[] versions) {
+        long snapshot = version;
+        for (int i = 0; i < len; i++) {
+            cards[i] = slotToCard[slots[i]];
+            versions[i] = slotVersions[slots[i]];
+            if (cards[i] == EMPTY) snapshot = EMPTY;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Checks whether a snapshot is still current: either nothing changed on the table since it was taken, or at least
+     * none of its slots changed. Like snapshot, this is an optimistic read that only locks if a card changes meanwhile.
+     * @param snapshot - the table version returned by snapshot.
+     * @param slots    - the slots of the snapshot.
+     * @param len      - the number of slots of the snapshot.
+     * @param versions - the slot versions of the snapshot.
+     * @return - true iff the cards in the slots are the ones read in the snapshot.
+     */
+    public boolean isCurrent(long snapshot, int[] slots, int len, long[] versions) {
+        if (snapshot == EMPTY) return false;
+        long stamp = versionLock.tryOptimisticRead();
+        boolean current = slotsCurrent(snapshot, slots, len, versions);
+        if (versionLock.validate(stamp)) return current;
+        stamp = versionLock.readLock();
+        try {
+            return slotsCurrent(snapshot, slots, len, versions);
+        } finally {
+            versionLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Checks whether the cards in some slots are still the ones read in a snapshot, whatever happened to the other
+     * slots (e.g. for a snapshot that read empty slots too).
+     * @param slots    - the slots to check.
+     * @param len      - the number of slots to check.
+     * @param versions - the versions of the slots in the snapshot.
+     * @return - true iff none of the slots changed since the snapshot.
+     */
+    public boolean isCurrent(int[] slots, int len, long[] versions) {
+        long stamp = versionLock.tryOptimisticRead();
+        boolean current = slotsUnchanged(slots, len, versions);
+        if (versionLock.validate(stamp)) return current;
+        stamp = versionLock.readLock();
+        try {
+            return slotsUnchanged(slots, len, versions);
+        } finally {
+            versionLock.unlockRead(stamp);
+        }
+    }
+
+    private boolean slotsCurrent(long snapshot, int[] slots, int len, long[] versions) {
+        return snapshot == version || slotsUnchanged(slots, len, versions);
+    }
+
+    private boolean slotsUnchanged(int[] slots, int len, long[] versions) {
+        for (int i = 0; i < len; i++)
+            if (slotVersions[slots[i]] != versions[i]) return false;
+        return true;
+    }
+
+    /**
+     * Removes the sets that include the given card from the sets on table index.
+     * @param card - a card that is leaving the table.
+     */
+    private void dropSetsOf(int card) {
+        for (int i = setsOnTable.size() - 1; i >= 0; i--) {
+            for (int setCard : setsOnTable.get(i)) {
+                if (setCard == card) {
+                    setsOnTable.remove(i);
+                    break;
+                }
+            }
         }
-        // TODO implement
     }
 
     /**
@@ -144,8 +515,9 @@ public class Table {
      */
     public void placeToken(int player, int slot) {
         // TODO implement
-        if(slotToCard[slot]!=null){
-            playerTokenGrid[player][slot]= true;
+        if(slotToCard[slot]!=EMPTY){
+            playerTokens[player][slot / Long.SIZE] |= 1L << slot;
+            slotTokens[slot][player / Long.SIZE] |= 1L << player;
             env.ui.placeToken(player, slot);}
     }
 
@@ -157,28 +529,68 @@ public class Table {
      */
     public boolean removeToken(int player, int slot) {
         // TODO implement
-        boolean before = playerTokenGrid[player][slot];
+        boolean before = hasToken(player, slot);
         if(before) {
-            playerTokenGrid[player][slot] = !playerTokenGrid[player][slot];
+            playerTokens[player][slot / Long.SIZE] &= ~(1L << slot);
+            slotTokens[slot][player / Long.SIZE] &= ~(1L << player);
             env.ui.removeToken(player,slot);
         }
         return before;
     }
     /**
-     * @post for 0<i<env.config.players and 0<i<table.size playerTokenGrid[i][j]=false;
+     * @post for 0<i<env.config.players and 0<j<table.size hasToken(i, j) == false;
      */
     public void removeTokens(){
-        playerTokenGrid = new boolean[env.config.players][env.config.rows*env.config.columns];
+        for (long[] tokens : playerTokens)
+            Arrays.fill(tokens, 0);
+        for (long[] owners : slotTokens)
+            Arrays.fill(owners, 0);
+    }
+
+    /**
+     * @param player - a player id.
+     * @param slot   - a slot on the table.
+     * @return - true iff the player has a token on the slot.
+     */
+    public boolean hasToken(int player, int slot) {
+        return (playerTokens[player][slot / Long.SIZE] & 1L << slot) != 0;
+    }
+
+    /**
+     * Finds the players that have a token on a slot, in the manner of BitSet.nextSetBit.
+     * @param slot       - a slot on the table.
+     * @param fromPlayer - the player id to start looking from (inclusive).
+     * @return - the lowest player id >= fromPlayer that has a token on the slot, or -1 if there is none.
+     */
+    public int nextTokenOwner(int slot, int fromPlayer) {
+        long[] owners = slotTokens[slot];
+        int word = fromPlayer / Long.SIZE;
+        if (word >= owners.length) return -1;
+        long bits = owners[word] & -1L << fromPlayer;
+        while (bits == 0) {
+            if (++word == owners.length) return -1;
+            bits = owners[word];
+        }
+        return word * Long.SIZE + Long.numberOfTrailingZeros(bits);
     }
     /**
      * @return if table exists on the table;;
      */
     public boolean existSetsOnTable(){
-        List<Integer> a = new LinkedList<>();
-        for(Integer i : slotToCard){
-            if(i!=null)
-                a.add(i);
-        }
-        return env.util.findSets(a,1).size()!=0;
+        return !setsOnTable.isEmpty();
+    }
+
+    /**
+     * @return the number of legal sets currently on the table.
+     */
+    public int countSetsOnTable(){
+        return setsOnTable.size();
+    }
+
+    /**
+     * @return a read only view of the legal sets currently on the table (each one a sorted array of card ids).
+     */
+    public List<int[]> setsOnTable(){
+        return Collections.unmodifiableList(setsOnTable);
     }
 }
\ No newline at end of file
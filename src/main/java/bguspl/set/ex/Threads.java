@@ -0,0 +1,119 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+
+/**
+ * This class starts the players' threads according to the thread model in the configuration (see Config.threadModel).
+ * Virtual threads are created through reflection, so the game still builds for Java 8 and falls back to platform
+ * threads on a JVM without them.
+ * Players park for most of the game without giving their thread back, so only VIRTUAL scales to thousands of players:
+ * PLATFORM and POOL both hold a platform thread per parked player.
+ */
+public final class Threads {
+
+    public static final String PLATFORM = "PLATFORM";
+    public static final String VIRTUAL = "VIRTUAL";
+    public static final String POOL = "POOL";
+
+    /**
+     * Thread.ofVirtual() and the Thread.Builder methods used on its result, or null if the JVM has no virtual threads.
+     */
+    private static final Method ofVirtual;
+    private static final Method named;
+    private static final Method unstarted;
+
+    static {
+        Method virtual = null, name = null, create = null;
+        try {
+            virtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class);
+            create = builder.getMethod("unstarted", Runnable.class);
+        } catch (ReflectiveOperationException ignored) {
+            virtual = null;
+        }
+        ofVirtual = virtual;
+        named = name;
+        unstarted = create;
+    }
+
+    /**
+     * The shared pool of the POOL thread model (created on first use). Players block for most of the game, so the
+     * pool grows as needed (a bounded pool would leave the later players waiting for a thread that is never given
+     * back) and only saves creating threads again between games.
+     */
+    private static ExecutorService pool;
+
+    private Threads() {}
+
+    /**
+     * Starts running a task in a new thread of the configured thread model.
+     * @param env  - the game environment objects.
+     * @param name - the name of the thread.
+     * @param task - the task to run.
+     */
+    public static void start(Env env, String name, Runnable task) {
+        String model = env.config.threadModel;
+        if (VIRTUAL.equals(model)) {
+            Thread thread = virtualThread(name, task);
+            if (thread != null) {
+                thread.start();
+                return;
+            }
+            env.logger.log(Level.WARNING, "virtual threads are not supported, starting " + name + " as a platform thread");
+        } else if (POOL.equals(model)) {
+            pool().execute(() -> {
+                Thread current = Thread.currentThread();
+                String poolName = current.getName();
+                current.setName(name);
+                try {
+                    task.run();
+                } finally {
+                    current.setName(poolName);
+                }
+            });
+            return;
+        }
+        new Thread(task, name).start();
+    }
+
+    /**
+     * @param name - the name of the threads.
+     * @return - a factory of daemon threads with the given name, for the helper threads that must not keep the game
+     * running.
+     */
+    public static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * @return - an unstarted virtual thread running the task, or null if the JVM does not support them.
+     */
+    private static Thread virtualThread(String name, Runnable task) {
+        if (ofVirtual == null) return null;
+        try {
+            Object builder = named.invoke(ofVirtual.invoke(null), name);
+            return (Thread) unstarted.invoke(builder, task);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            return null; // e.g. a preview feature that is not enabled
+        }
+    }
+
+    private static synchronized ExecutorService pool() {
+        if (pool == null) {
+            pool = Executors.newCachedThreadPool(daemon("player-pool"));
+        }
+        return pool;
+    }
+}
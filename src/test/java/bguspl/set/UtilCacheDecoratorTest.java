@@ -0,0 +1,92 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UtilCacheDecoratorTest {
+
+    UtilCacheDecorator cache;
+    Util util;
+
+    @BeforeEach
+    void setUp() {
+        Properties properties = new Properties();
+        properties.put("SetCacheSize", "2");
+        Config config = new Config(Logger.getAnonymousLogger(), properties);
+        util = new UtilImpl(config);
+        cache = new UtilCacheDecorator(util, config);
+    }
+
+    private List<int[]> sets(Util util, int[] cards, int count) {
+        List<int[]> sets = new ArrayList<>();
+        util.findSets(cards, cards.length, count, set -> sets.add(set.clone()));
+        return sets;
+    }
+
+    private void assertSameSets(List<int[]> expected, List<int[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i)
+            assertArrayEquals(expected.get(i), actual.get(i));
+    }
+
+    @Test
+    void repeatedQueriesHitTheCache() {
+        int[] cards = {11, 3, 7, 0, 10, 2, 5, 9, 1, 6, 4, 8};
+        assertSameSets(sets(util, cards, Integer.MAX_VALUE), sets(cache, cards, Integer.MAX_VALUE));
+        assertEquals(1, cache.misses());
+
+        // hits report the same sets in the same order as the search
+        assertSameSets(sets(util, cards, Integer.MAX_VALUE), sets(cache, cards, Integer.MAX_VALUE));
+        assertSameSets(sets(util, cards, 2), sets(cache, cards, 2));
+        assertEquals(util.countSets(cards, cards.length), cache.countSets(cards, cards.length));
+        int[] first = new int[3];
+        assertEquals(1, cache.findSets(cards, cards.length, Integer.MAX_VALUE, set -> {
+            System.arraycopy(set, 0, first, 0, set.length);
+            return false; // the sink stops the search
+        }));
+        assertArrayEquals(sets(util, cards, 1).get(0), first);
+        assertEquals(4, cache.hits());
+        assertEquals(1, cache.misses());
+    }
+
+    @Test
+    void partialSearchesAreNotCached() {
+        int[] cards = {0, 1, 2, 3, 4, 5, 6, 7, 8};
+        assertEquals(1, cache.findSets(cards, cards.length, 1, null));
+        assertEquals(1, cache.findSets(cards, cards.length, Integer.MAX_VALUE, set -> false));
+        assertEquals(util.countSets(cards, cards.length), cache.countSets(cards, cards.length));
+        assertEquals(3, cache.misses());
+        assertEquals(0, cache.hits());
+    }
+
+    @Test
+    void otherOrdersOfTheSameCardsAreSearchedAgain() {
+        int[] cards = {0, 1, 2, 3, 4, 5, 6, 7, 8};
+        int[] reversed = {8, 7, 6, 5, 4, 3, 2, 1, 0};
+        sets(cache, cards, Integer.MAX_VALUE);
+        assertSameSets(sets(util, reversed, Integer.MAX_VALUE), sets(cache, reversed, Integer.MAX_VALUE));
+        assertEquals(2, cache.misses());
+        assertEquals(0, cache.hits());
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvicted() {
+        int[] first = {0, 1, 2}, second = {3, 4, 5}, third = {6, 7, 8};
+        cache.findSets(first, 3, Integer.MAX_VALUE, null);
+        cache.findSets(second, 3, Integer.MAX_VALUE, null);
+        cache.findSets(first, 3, Integer.MAX_VALUE, null);
+        cache.findSets(third, 3, Integer.MAX_VALUE, null); // evicts second
+        cache.findSets(first, 3, Integer.MAX_VALUE, null);
+        cache.findSets(second, 3, Integer.MAX_VALUE, null);
+        assertEquals(2, cache.hits());
+        assertEquals(4, cache.misses());
+    }
+}
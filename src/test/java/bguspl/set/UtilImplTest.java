@@ -0,0 +1,258 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UtilImplTest {
+
+    Util util;
+    Config config;
+
+    @BeforeEach
+    void setUp() {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "4");
+        config = new Config(Logger.getAnonymousLogger(), properties);
+        util = new UtilImpl(config);
+    }
+
+    // the straightforward cubic search, used as a reference
+    private List<int[]> bruteForce(List<Integer> deck) {
+        List<int[]> sets = new LinkedList<>();
+        for (int i = 0; i < deck.size(); ++i)
+            for (int j = i + 1; j < deck.size(); ++j)
+                for (int k = j + 1; k < deck.size(); ++k) {
+                    int[] cards = IntStream.of(deck.get(i), deck.get(j), deck.get(k)).sorted().toArray();
+                    if (util.testSet(cards)) sets.add(cards);
+                }
+        return sets;
+    }
+
+    private void assertSameSets(List<int[]> expected, List<int[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i)
+            assertArrayEquals(expected.get(i), actual.get(i));
+    }
+
+    @Test
+    void findSets_MatchesBruteForceOnRandomDecks() {
+        Random random = new Random(42);
+        List<Integer> cards = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+        for (int round = 0; round < 20; ++round) {
+            Collections.shuffle(cards, random);
+            List<Integer> deck = new ArrayList<>(cards.subList(0, 3 + random.nextInt(20)));
+            assertSameSets(bruteForce(deck), util.findSets(deck, Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    void findSets_StopsAfterCount() {
+        List<Integer> deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+        assertEquals(1, util.findSets(deck, 1).size());
+        assertEquals(5, util.findSets(deck, 5).size());
+        assertEquals(1080, util.findSets(deck, Integer.MAX_VALUE).size());
+    }
+
+    @Test
+    void findSets_NoSetsInSmallDeck() {
+        List<Integer> deck = new LinkedList<>();
+        deck.add(0);
+        deck.add(1);
+        assertEquals(0, util.findSets(deck, Integer.MAX_VALUE).size());
+    }
+
+    // checks the rule directly on the features of the cards
+    private static boolean isSet(Util util, int a, int b, int c) {
+        int[][] features = util.cardsToFeatures(new int[]{a, b, c});
+        for (int i = 0; i < features[0].length; ++i) {
+            boolean same = features[0][i] == features[1][i] && features[1][i] == features[2][i];
+            boolean different = features[0][i] != features[1][i] && features[1][i] != features[2][i] && features[0][i] != features[2][i];
+            if (!same && !different) return false;
+        }
+        return true;
+    }
+
+    @Test
+    void testSet_PrimitiveMatchesArray() {
+        for (int a = 0; a < config.deckSize; a += 7)
+            for (int b = 0; b < config.deckSize; b += 5)
+                for (int c = 0; c < config.deckSize; ++c) {
+                    assertEquals(isSet(util, a, b, c), util.testSet(a, b, c));
+                    assertEquals(isSet(util, a, b, c), util.testSet(new int[]{a, b, c}));
+                }
+    }
+
+    @Test
+    void testSet_PackedFeatureSizeFour() {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", "4");
+        properties.put("FeatureCount", "3");
+        Util util = new UtilImpl(new Config(Logger.getAnonymousLogger(), properties));
+        for (int a = 0; a < 64; ++a)
+            for (int b = 0; b < 64; ++b)
+                for (int c = 0; c < 64; ++c)
+                    assertEquals(isSet(util, a, b, c), util.testSet(a, b, c));
+    }
+
+    @Test
+    void countSets_WholeDeck() {
+        int[] cards = IntStream.range(0, config.deckSize).toArray();
+        assertEquals(1080, util.countSets(cards, cards.length));
+        assertEquals(util.findSets(Arrays.asList(0, 1, 2, 3, 4, 5), Integer.MAX_VALUE).size(), util.countSets(cards, 6));
+    }
+
+    @Test
+    void findSets_SinkCanStopTheSearch() {
+        int[] cards = IntStream.range(0, config.deckSize).toArray();
+        List<int[]> sets = new ArrayList<>();
+        int found = util.findSets(cards, cards.length, Integer.MAX_VALUE, set -> sets.add(set.clone()) && sets.size() < 3);
+        assertEquals(3, found);
+        assertSameSets(util.findSets(IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList()), 3), sets);
+    }
+
+    @Test
+    void cardToFeatures_MatchesCardId() {
+        for (String featureSize : new String[]{"3", "5"}) {
+            Properties properties = new Properties();
+            properties.put("FeatureSize", featureSize);
+            properties.put("FeatureCount", "3");
+            Config config = new Config(Logger.getAnonymousLogger(), properties);
+            Util util = new UtilImpl(config);
+            for (int card = 0; card < config.deckSize; ++card) {
+                int id = 0;
+                for (int feature : util.cardToFeatures(card))
+                    id = id * config.featureSize + feature;
+                assertEquals(card, id);
+            }
+        }
+    }
+
+    @Test
+    void findSetsWith_OnlySetsContainingTheCard() {
+        int[] cards = IntStream.range(1, 30).toArray();
+        List<int[]> sets = new ArrayList<>();
+        util.findSetsWith(0, cards, cards.length, Integer.MAX_VALUE, set -> sets.add(set.clone()));
+        List<int[]> expected = util.findSets(IntStream.range(0, 30).boxed().collect(Collectors.toList()), Integer.MAX_VALUE)
+                .stream().filter(set -> set[0] == 0).collect(Collectors.toList());
+        assertSameSets(expected, sets);
+    }
+
+    @Test
+    void findSets_ParallelMatchesSequential() {
+        for (String featureSize : new String[]{"3", "4"}) {
+            Properties properties = new Properties();
+            properties.put("FeatureSize", featureSize);
+            properties.put("FeatureCount", "3");
+            properties.put("ParallelSearchThreshold", "0");
+            Util sequential = new UtilImpl(new Config(Logger.getAnonymousLogger(), properties));
+            properties.put("ParallelSearchThreshold", "10");
+            Config config = new Config(Logger.getAnonymousLogger(), properties);
+            Util parallel = new UtilImpl(config);
+
+            List<Integer> deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+            Collections.shuffle(deck, new Random(3));
+            for (int count : new int[]{1, 7, 100, Integer.MAX_VALUE})
+                assertSameSets(sequential.findSets(deck, count), parallel.findSets(deck, count));
+            int[] cards = deck.stream().mapToInt(Integer::intValue).toArray();
+            assertEquals(sequential.countSets(cards, cards.length), parallel.countSets(cards, cards.length));
+        }
+    }
+
+    @Test
+    void streamSets_LazyAndOrdered() {
+        List<Integer> deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+        Collections.shuffle(deck, new Random(5));
+        int[] cards = deck.stream().mapToInt(Integer::intValue).toArray();
+
+        assertSameSets(util.findSets(deck, Integer.MAX_VALUE), util.streamSets(cards, cards.length).collect(Collectors.toList()));
+        assertSameSets(util.findSets(deck, 4), util.streamSets(cards, cards.length).limit(4).collect(Collectors.toList()));
+        assertSameSets(util.findSets(deck, Integer.MAX_VALUE),
+                util.streamSets(cards, cards.length).parallel().collect(Collectors.toList()));
+    }
+
+    // checks the rule directly on the features of any number of cards
+    private static boolean isSet(Util util, int[] cards) {
+        int[][] features = util.cardsToFeatures(cards);
+        for (int i = 0; i < features[0].length; ++i) {
+            int i1 = i;
+            long distinct = Arrays.stream(features).mapToInt(f -> f[i1]).distinct().count();
+            if (distinct != 1 && distinct != cards.length) return false;
+        }
+        return true;
+    }
+
+    private static void combinations(int[] deck, int r, int start, int[] combination, int depth, List<int[]> out) {
+        if (depth == r) {
+            out.add(combination.clone());
+            return;
+        }
+        for (int i = start; i < deck.length; ++i) {
+            combination[depth] = deck[i];
+            combinations(deck, r, i + 1, combination, depth + 1, out);
+        }
+    }
+
+    @Test
+    void findSets_LargerFeatureSizes() {
+        for (String featureSize : new String[]{"4", "5"}) {
+            Properties properties = new Properties();
+            properties.put("FeatureSize", featureSize);
+            properties.put("FeatureCount", "3");
+            Config config = new Config(Logger.getAnonymousLogger(), properties);
+            Util util = new UtilImpl(config);
+
+            List<Integer> deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+            Collections.shuffle(deck, new Random(11));
+            deck = new ArrayList<>(deck.subList(0, 30));
+            int[] cards = deck.stream().mapToInt(Integer::intValue).toArray();
+
+            List<int[]> expected = new ArrayList<>();
+            List<int[]> tuples = new ArrayList<>();
+            combinations(cards, config.featureSize, 0, new int[config.featureSize], 0, tuples);
+            for (int[] tuple : tuples) {
+                assertEquals(isSet(util, tuple), util.testSet(tuple));
+                if (isSet(util, tuple)) {
+                    int[] set = tuple.clone();
+                    Arrays.sort(set);
+                    expected.add(set);
+                }
+            }
+            assertSameSets(expected, util.findSets(deck, Integer.MAX_VALUE));
+            assertSameSets(expected.subList(0, 2), util.findSets(deck, 2));
+
+            // every full deck of featureSize ^ 3 cards has the same number of sets through each card
+            int[] all = IntStream.range(1, config.deckSize).toArray();
+            int[] withLast = IntStream.range(0, config.deckSize - 1).toArray();
+            assertEquals(util.findSetsWith(0, all, all.length, Integer.MAX_VALUE, null),
+                    util.findSetsWith(config.deckSize - 1, withLast, withLast.length, Integer.MAX_VALUE, null));
+        }
+    }
+
+    @Test
+    void testSet_FewerCardsThanFeatureSize() {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", "5");
+        properties.put("FeatureCount", "3");
+        Util util = new UtilImpl(new Config(Logger.getAnonymousLogger(), properties));
+        Random random = new Random(13);
+        for (int round = 0; round < 2000; ++round) {
+            int[] cards = random.ints(3, 0, 125).toArray();
+            assertEquals(isSet(util, cards), util.testSet(cards));
+        }
+    }
+}
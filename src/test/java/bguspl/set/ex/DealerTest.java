@@ -17,14 +17,14 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.util.logging.Logger;
 import java.util.*; //added
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 @ExtendWith(MockitoExtension.class)
 class DealerTest {
     
     private Player[] players;
-    private Integer[] slotToCard;
-    private Integer[] cardToSlot;
+    private int[] slotToCard;
+    private int[] cardToSlot;
     
     Dealer dealer;
     @Mock
@@ -51,8 +51,10 @@ class DealerTest {
         properties.put("PlayerKeys2", "85,73,79,80");
         MockLogger logger = new MockLogger();
         Config config = new Config(logger, properties);
-        slotToCard = new Integer[config.tableSize];
-        cardToSlot = new Integer[config.deckSize];
+        slotToCard = new int[config.tableSize];
+        cardToSlot = new int[config.deckSize];
+        Arrays.fill(slotToCard, Table.EMPTY);
+        Arrays.fill(cardToSlot, Table.EMPTY);
         
         Env env = new Env(logger, config, new MockUserInterface(), new MockUtil());
         table = new Table(env, slotToCard, cardToSlot);
@@ -60,10 +62,8 @@ class DealerTest {
     }
     
     private int fillSomeSlots() {
-        slotToCard[1] = 3;
-        slotToCard[2] = 5;
-        cardToSlot[3] = 1;
-        cardToSlot[5] = 2;
+        table.placeCard(3, 1);
+        table.placeCard(5, 2);
 
         return 2;
     }
@@ -85,6 +85,149 @@ class DealerTest {
         assertEquals(4,table.countCards());
 
     }
+
+    //checking that without a timer the dealer fills the table so that it has a set
+    @Test
+    void placeCardsOnTable_DealsASet(){
+        Env env = TableTest.testEnv("Rows", "2", "Columns", "2", "TurnTimeoutSeconds", "0", "TableDelaySeconds", "0");
+        table = new Table(env);
+        dealer = new Dealer(env, table, players);
+
+        // three cards that make no set
+        table.placeCards(new int[]{80, 79, 77}, new int[]{0, 1, 2});
+        assertFalse(table.existSetsOnTable());
+        dealer.placeCardsOnTableT();
+        assertEquals(4, table.countCards());
+        assertTrue(table.existSetsOnTable());
+    }
+
+    //checking that without a timer the dealer replaces a card on the table when no deck card completes a set
+    @Test
+    void placeCardsOnTable_ReplacesACardForASet(){
+        Env env = TableTest.testEnv("Rows", "2", "Columns", "2", "TurnTimeoutSeconds", "0", "TableDelaySeconds", "0");
+        Util util = env.util;
+        table = new Table(env);
+        dealer = new Dealer(env, table, new Player[0]);
+
+        // three cards that make no set, and the cards completing their pairs were already collected
+        int[] onTable = {80, 79, 77};
+        table.placeCards(onTable, new int[]{0, 1, 2});
+        Deck deck = dealer.getDeckT();
+        for (int card : onTable) deck.remove(card);
+        for (int i = 0; i < onTable.length; i++)
+            for (int j = i + 1; j < onTable.length; j++)
+                assertTrue(deck.remove(util.thirdCard(onTable[i], onTable[j])));
+        int left = deck.size();
+
+        dealer.placeCardsOnTableT();
+        assertEquals(4, table.countCards());
+        assertTrue(table.existSetsOnTable());
+        assertEquals(left - 1, deck.size()); // two cards of the set drawn, the card they replace returned
+    }
+
+    private void claimsEnv() {
+        Env env = TableTest.testEnv("Rows", "2", "Columns", "2", "TableDelaySeconds", "0");
+        table = new Table(env);
+        players = new Player[2];
+        dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, true);
+        // cards 0, 1 and 2 are a set, card 3 is not in a set with any two of them
+        table.placeCards(new int[]{0, 1, 2, 3}, new int[]{0, 1, 2, 3});
+    }
+
+    /**
+     * Places the player's tokens on the slots and makes the claim, as the player thread does.
+     */
+    private Claim claim(Player player, int... slots) {
+        int[] cards = new int[slots.length];
+        long[] versions = new long[slots.length];
+        for (int slot : slots) {
+            table.placeToken(player.id, slot);
+            player.currSet.add(slot);
+        }
+        player.set_status = Player.SET_STATUS.UNCHECKED;
+        return new Claim(player, slots, cards, versions, table.snapshot(slots, slots.length, cards, versions));
+    }
+
+    //checking that of two claims on the same cards only the earlier one scores, and the later one is not penalized
+    @Test
+    void removeCardsFromTable_OverlappingClaims() {
+        claimsEnv();
+        Claim first = claim(players[0], 0, 1, 2);
+        Claim second = claim(players[1], 1, 2, 3);
+        dealer.claim(second); // queued first, but made later
+        dealer.claim(first);
+        dealer.removeCardsFromTableT();
+
+        assertEquals(Player.SCORE_INDICATOR.Point, players[0].score_indicator);
+        assertEquals(Player.SCORE_INDICATOR.Idle, players[1].score_indicator);
+        assertEquals(Player.SET_STATUS.CHECKED, players[1].set_status);
+        assertEquals(1, table.countCards());
+        assertTrue(table.hasCard(3));
+    }
+
+    //checking that a claim read before a redeal is rejected even if the same cards were dealt to the same slots
+    @Test
+    void removeCardsFromTable_StaleClaim() {
+        claimsEnv();
+        Claim stale = claim(players[0], 0, 1, 2);
+        table.removeCards(new int[]{0, 1, 2});
+        table.placeCards(new int[]{0, 1, 2}, new int[]{0, 1, 2});
+        dealer.claim(stale);
+        dealer.removeCardsFromTableT();
+
+        assertEquals(Player.SCORE_INDICATOR.Idle, players[0].score_indicator);
+        assertEquals(Player.SET_STATUS.CHECKED, players[0].set_status);
+        assertTrue(players[0].currSet.isEmpty());
+        assertEquals(4, table.countCards());
+    }
+
+    private Dealer timedDealer(String turnTimeout, String warning) {
+        Env env = TableTest.testEnv("TurnTimeoutSeconds", turnTimeout, "TurnTimeoutWarningSeconds", warning);
+        Dealer timed = new Dealer(env, new Table(env), players);
+        timed.resetTimer(0); // the countdown shows 60 until 1000, then 59 until 2000 and so on
+        return timed;
+    }
+
+    //checking that the dealer wakes up exactly when the shown second changes
+    @Test
+    void nextTick_OnTheWholeSecond(){
+        dealer = timedDealer("60", "5");
+        assertEquals(1000, dealer.nextTick(0));
+        assertEquals(2000, dealer.nextTick(1000));
+        assertEquals(2000, dealer.nextTick(1999));
+    }
+
+    //checking that the dealer wakes up when the warning starts, and then every hundredth of a second
+    @Test
+    void nextTick_AtTheWarningThreshold(){
+        dealer = timedDealer("60", "4.5");
+        assertEquals(56000, dealer.nextTick(55100));
+        assertEquals(56500, dealer.nextTick(56100)); // the warning starts before the next second
+        assertEquals(56510, dealer.nextTick(56500)); // 4.49 is shown until 4.489 is left
+        assertEquals(56520, dealer.nextTick(56510));
+    }
+
+    //checking that the dealer never sleeps past the reshuffle time
+    @Test
+    void nextTick_CappedByTheReshuffleTime(){
+        dealer = timedDealer("60", "0");
+        assertEquals(60999, dealer.nextTick(60500));
+        dealer = timedDealer("60", "5");
+        assertEquals(60999, dealer.nextTick(60996));
+        assertEquals(61000, dealer.nextTick(61000)); // already due
+    }
+
+    //checking the ticks of the elapsed time, and that there are none without a timer
+    @Test
+    void nextTick_Elapsed(){
+        dealer = timedDealer("0", "0");
+        assertEquals(1000, dealer.nextTick(0));
+        assertEquals(3000, dealer.nextTick(2500));
+        dealer = timedDealer("-1", "0");
+        assertEquals(Long.MAX_VALUE, dealer.nextTick(0));
+    }
     
 
         
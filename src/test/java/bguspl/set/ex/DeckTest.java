@@ -0,0 +1,64 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeckTest {
+
+    @Test
+    void draw_and_Add_WrapAround() {
+        Deck deck = new Deck(4, new Random(0));
+        assertEquals(0, deck.draw());
+        assertEquals(1, deck.draw());
+        deck.add(0);
+        deck.addAll(new int[]{1, 9}, 1); // only the first card is returned
+        assertEquals(4, deck.size());
+
+        int[] order = new int[4];
+        for (int i = 0; i < order.length; ++i)
+            order[i] = deck.draw();
+        assertArrayEquals(new int[]{2, 3, 0, 1}, order);
+        assertTrue(deck.isEmpty());
+        assertThrows(NoSuchElementException.class, deck::draw);
+    }
+
+    @Test
+    void shuffle_KeepsTheSameCards() {
+        Deck deck = new Deck(81, new Random(1));
+        for (int i = 0; i < 10; ++i) deck.draw();
+        deck.addAll(new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, 10);
+        deck.shuffle();
+
+        int[] cards = new int[deck.size()];
+        for (int i = 0; i < cards.length; ++i) cards[i] = deck.get(i);
+        assertFalse(isSorted(cards));
+        Arrays.sort(cards);
+        for (int i = 0; i < cards.length; ++i) assertEquals(i, cards[i]);
+    }
+
+    @Test
+    void contains_FollowsDrawsRemovesAndShuffles() {
+        Deck deck = new Deck(9, new Random(2));
+        assertEquals(0, deck.draw());
+        assertFalse(deck.contains(0));
+        assertTrue(deck.remove(5));
+        assertFalse(deck.remove(5));
+        assertFalse(deck.contains(5));
+        deck.add(0);
+        deck.shuffle();
+        for (int card = 0; card < 9; ++card) assertEquals(card != 5, deck.contains(card));
+        while (!deck.isEmpty()) assertTrue(deck.remove(deck.get(deck.size() - 1)));
+        for (int card = 0; card < 9; ++card) assertFalse(deck.contains(card));
+    }
+
+    private static boolean isSorted(int[] cards) {
+        for (int i = 1; i < cards.length; ++i)
+            if (cards[i - 1] > cards[i]) return false;
+        return true;
+    }
+}
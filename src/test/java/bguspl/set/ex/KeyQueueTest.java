@@ -0,0 +1,55 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyQueueTest {
+
+    @Test
+    void offer_and_Poll_KeepThePressOrder() {
+        KeyQueue queue = new KeyQueue(3, 12);
+        assertTrue(queue.offer(7));
+        assertTrue(queue.offer(2));
+        assertTrue(queue.offer(5));
+        assertFalse(queue.offer(1)); // dropped, the queue is full
+        assertEquals(3, queue.size());
+
+        assertEquals(7, queue.poll());
+        assertTrue(queue.offer(9));
+        assertEquals(2, queue.poll());
+        assertEquals(5, queue.poll());
+        assertEquals(9, queue.poll());
+        assertEquals(-1, queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void discard_SkipsOnlyEarlierPresses() {
+        KeyQueue queue = new KeyQueue(3, 12);
+        queue.offer(4);
+        queue.offer(6);
+        queue.discard(4);
+        queue.offer(4);
+
+        assertEquals(6, queue.poll());
+        assertEquals(4, queue.poll());
+        assertEquals(-1, queue.poll());
+    }
+
+    @Test
+    void singleProducerSingleConsumer() throws InterruptedException {
+        KeyQueue queue = new KeyQueue(3, 1000);
+        Thread producer = new Thread(() -> {
+            for (int slot = 0; slot < 1000; ++slot)
+                while (!queue.offer(slot)) Thread.yield();
+        });
+        producer.start();
+        for (int expected = 0; expected < 1000; ++expected) {
+            int slot;
+            while ((slot = queue.poll()) < 0) Thread.yield();
+            assertEquals(expected, slot);
+        }
+        producer.join();
+    }
+}
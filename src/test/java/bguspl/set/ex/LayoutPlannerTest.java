@@ -0,0 +1,72 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.Util;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LayoutPlannerTest {
+
+    LayoutPlanner planner;
+    Util util;
+    Config config;
+
+    @BeforeEach
+    void setUp() {
+        Env env = TableTest.testEnv();
+        config = env.config;
+        util = env.util;
+        planner = new LayoutPlanner(env);
+    }
+
+    @AfterEach
+    void tearDown() {
+        planner.shutdown();
+    }
+
+    private LayoutPlanner.Layout await(int cards) throws InterruptedException {
+        for (int i = 0; i < 500; ++i) {
+            LayoutPlanner.Layout layout = planner.take(cards);
+            if (layout != null) return layout;
+            Thread.sleep(10);
+        }
+        return null;
+    }
+
+    @Test
+    void plan_ShufflesTheCardsAndFindsTheirSets() throws InterruptedException {
+        int[] inPlay = {3, 5, 8, 13, 21, 34, 55, 1, 2, 4, 6, 7, 9, 10, 11, 12, 14};
+        planner.plan(inPlay, config.tableSize);
+        LayoutPlanner.Layout layout = await(inPlay.length);
+        assertNotNull(layout);
+
+        int[] sorted = layout.order.clone();
+        Arrays.sort(sorted);
+        int[] expected = inPlay.clone();
+        Arrays.sort(expected);
+        assertArrayEquals(expected, sorted);
+        assertEquals(util.countSets(layout.order, config.tableSize), layout.sets.size());
+        for (int[] set : layout.sets) assertTrue(util.testSet(set));
+
+        assertNull(planner.take(inPlay.length)); // a layout is taken once
+    }
+
+    @Test
+    void invalidate_DropsThePlannedLayout() throws InterruptedException {
+        int[] inPlay = {0, 1, 2, 3, 4, 5};
+        planner.plan(inPlay, config.tableSize);
+        planner.invalidate();
+        Thread.sleep(50);
+        assertNull(planner.take(inPlay.length));
+
+        planner.plan(inPlay, config.tableSize);
+        Thread.sleep(50);
+        assertNull(planner.take(inPlay.length + 1)); // planned for other cards
+    }
+}
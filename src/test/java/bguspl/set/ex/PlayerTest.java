@@ -14,8 +14,10 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -88,6 +90,17 @@ class PlayerTest {
         verify(ui).setFreeze(eq(player.id), eq(env.config.penaltyFreezeMillis));
     }
 
+    @Test
+    void penalty_FreezeCountsDown() {
+        player.penalty();
+        assertTrue(player.isFrozen());
+
+        // the label shows the remaining whole seconds, and is cleared at the end
+        verify(ui, timeout(1500)).setFreeze(eq(player.id), eq(env.config.penaltyFreezeMillis - 1000));
+        verify(ui, timeout(env.config.penaltyFreezeMillis)).setFreeze(eq(player.id), eq(0L));
+        assertFalse(player.isFrozen());
+    }
+
     @Test
     // check if terminate closes the thread
     void threadIsTerminated() throws InterruptedException {
@@ -0,0 +1,54 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.Util;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RemainingSetsTest {
+
+    RemainingSets remainingSets;
+    Util util;
+    Config config;
+
+    @BeforeEach
+    void setUp() {
+        Env env = TableTest.testEnv();
+        config = env.config;
+        util = env.util;
+        remainingSets = new RemainingSets(env);
+    }
+
+    @Test
+    void count_WholeDeck() {
+        assertEquals(1080, remainingSets.count());
+        assertTrue(remainingSets.hasSets());
+    }
+
+    @Test
+    void collect_MatchesFullSearch() {
+        List<Integer> cards = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+        for (int card = 0; card < config.deckSize; card += 2) {
+            remainingSets.collect(card);
+            remainingSets.collect(card); // collecting twice changes nothing
+            cards.remove((Integer) card);
+            assertEquals(util.findSets(cards, Integer.MAX_VALUE).size(), remainingSets.count());
+        }
+    }
+
+    @Test
+    void collect_AllCards() {
+        for (int card = 0; card < config.deckSize; ++card)
+            remainingSets.collect(card);
+        assertFalse(remainingSets.hasSets());
+    }
+}
@@ -0,0 +1,109 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+import bguspl.set.Util;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SolverAiStrategyTest {
+
+    Util util;
+    Table table;
+
+    private SolverAiStrategy strategy(String errorRate) {
+        Env env = TableTest.testEnv("TableDelaySeconds", "0", "AiStrategy", "SOLVER", "AiErrorRate", errorRate,
+                "AiReactionMeanSeconds", "1", "AiReactionStdDevSeconds", "0");
+        util = env.util;
+        table = new Table(env);
+        // cards 0, 1, 2 are a set, and so are 3, 4, 5
+        for (int slot = 0; slot < 6; ++slot)
+            table.placeCard(slot, slot);
+        AiStrategy strategy = AiStrategy.create(env, table, 0);
+        assertTrue(strategy instanceof SolverAiStrategy);
+        return (SolverAiStrategy) strategy;
+    }
+
+    private int[] pressedCards(int[] keys, int len) {
+        int[] cards = new int[len];
+        for (int i = 0; i < len; ++i) cards[i] = table.cardAt(keys[i]);
+        return cards;
+    }
+
+    @Test
+    void plan_PressesTheSlotsOfASet() {
+        SolverAiStrategy strategy = strategy("0");
+        int[] keys = new int[table.size + 3];
+        assertEquals(3, strategy.plan(keys));
+        assertTrue(util.testSet(pressedCards(keys, 3)));
+        assertEquals(1000, strategy.reactionMillis());
+    }
+
+    @Test
+    void plan_ReplacesTokensOutsideTheSet() {
+        SolverAiStrategy strategy = strategy("0");
+        table.removeCard(3); // leaves the set 0, 1, 2 only
+        table.placeToken(0, 4);
+        table.placeToken(0, 1);
+
+        int[] keys = new int[table.size + 3];
+        assertEquals(3, strategy.plan(keys));
+        assertEquals(4, keys[0]); // the token on slot 4 is removed first
+        assertArrayEquals(new int[]{0, 2}, new int[]{keys[1], keys[2]});
+    }
+
+    @Test
+    void plan_KeepsTheTokensOfASet() {
+        SolverAiStrategy strategy = strategy("0");
+        int[] keys = new int[table.size + 3];
+        for (int slot = 3; slot < 6; ++slot) table.placeToken(0, slot);
+        assertEquals(0, strategy.plan(keys)); // the claim of 3, 4, 5 is pending
+
+        table.removeToken(0, 5);
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(1, strategy.plan(keys)); // completes 3, 4, 5 rather than going for 0, 1, 2
+            assertEquals(5, keys[0]);
+        }
+    }
+
+    @Test
+    void isCurrent_UntilAPlannedCardIsReplaced() {
+        SolverAiStrategy strategy = strategy("0");
+        int[] keys = new int[table.size + 3];
+        assertEquals(3, strategy.plan(keys));
+        table.placeCard(20, 11); // another slot
+        assertTrue(strategy.isCurrent());
+
+        int card = table.cardAt(keys[1]);
+        table.removeCard(keys[1]);
+        table.placeCard(card, keys[1]); // the same card, dealt again
+        assertFalse(strategy.isCurrent());
+    }
+
+    @Test
+    void plan_WithErrors_ClaimsAWrongSet() {
+        SolverAiStrategy strategy = strategy("1");
+        int[] keys = new int[table.size + 3];
+        for (int i = 0; i < 20; ++i) {
+            assertEquals(3, strategy.plan(keys));
+            int[] cards = pressedCards(keys, 3);
+            assertFalse(cards[0] != Table.EMPTY && cards[1] != Table.EMPTY && cards[2] != Table.EMPTY
+                    && util.testSet(cards));
+        }
+    }
+
+    @Test
+    void plan_WithErrors_PressesOnlySlotsWithCards() {
+        SolverAiStrategy strategy = strategy("1");
+        table.removeCard(4); // holes at slot 4 and after slot 5, the set 0, 1, 2 is left
+        int[] keys = new int[table.size + 3];
+        for (int i = 0; i < 20; ++i) {
+            assertEquals(3, strategy.plan(keys));
+            int[] cards = pressedCards(keys, 3);
+            for (int card : cards) assertNotEquals(Table.EMPTY, card);
+            assertFalse(util.testSet(cards));
+        }
+    }
+}
@@ -4,20 +4,26 @@ import bguspl.set.Config;
 import bguspl.set.Env;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
+import bguspl.set.UtilImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.Random;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 class TableTest {
 
     Table table;
-    private Integer[] slotToCard;
-    private Integer[] cardToSlot;
+    Env env;
+    private int[] slotToCard;
+    private int[] cardToSlot;
 
     @BeforeEach
     void setUp() {
@@ -32,34 +38,32 @@ class TableTest {
         properties.put("PlayerKeys2", "85,73,79,80");
         MockLogger logger = new MockLogger();
         Config config = new Config(logger, properties);
-        slotToCard = new Integer[config.tableSize];
-        cardToSlot = new Integer[config.deckSize];
+        slotToCard = new int[config.tableSize];
+        cardToSlot = new int[config.deckSize];
+        Arrays.fill(slotToCard, Table.EMPTY);
+        Arrays.fill(cardToSlot, Table.EMPTY);
 
-        Env env = new Env(logger, config, new MockUserInterface(), new MockUtil());
+        env = new Env(logger, config, new MockUserInterface(), new MockUtil());
         table = new Table(env, slotToCard, cardToSlot);
     }
 
     private int fillSomeSlots() {
-        slotToCard[1] = 3;
-        slotToCard[2] = 5;
-        cardToSlot[3] = 1;
-        cardToSlot[5] = 2;
+        table.placeCard(3, 1);
+        table.placeCard(5, 2);
 
         return 2;
     }
 
     private void fillAllSlots() {
-        for (int i = 0; i < slotToCard.length; ++i) {
-            slotToCard[i] = i;
-            cardToSlot[i] = i;
-        }
+        for (int i = 0; i < slotToCard.length; ++i)
+            table.placeCard(i, i);
     }
 
     private void placeSomeCardsAndAssert() throws InterruptedException {
         table.placeCard(8, 2);
 
-        assertEquals(8, (int) slotToCard[2]);
-        assertEquals(2, (int) cardToSlot[8]);
+        assertEquals(8, slotToCard[2]);
+        assertEquals(2, cardToSlot[8]);
     }
 
     @Test
@@ -75,6 +79,75 @@ class TableTest {
         assertEquals(slotsFilled, table.countCards());
     }
 
+    @Test
+    void countCards_AfterRemovingCards() {
+
+        fillAllSlots();
+        table.removeCard(0);
+        table.removeCard(0); // removing from an empty slot changes nothing
+        table.placeCard(7, 2); // replaces the card in slot 2
+        assertEquals(slotToCard.length - 1, table.countCards());
+        assertEquals(Table.EMPTY, table.cardAt(0));
+        assertEquals(Table.EMPTY, table.slotOf(2));
+    }
+
+    @Test
+    void snapshot_IsCurrentUntilItsSlotsChange() {
+
+        fillAllSlots();
+        int[] slots = {0, 1, 2};
+        int[] cards = new int[3];
+        long[] versions = new long[3];
+        long snapshot = table.snapshot(slots, 3, cards, versions);
+        assertNotEquals(Table.EMPTY, snapshot);
+        assertArrayEquals(new int[]{slotToCard[0], slotToCard[1], slotToCard[2]}, cards);
+        assertTrue(table.isCurrent(snapshot, slots, 3, versions));
+
+        // a change elsewhere on the table does not matter
+        table.removeCard(3);
+        assertTrue(table.isCurrent(snapshot, slots, 3, versions));
+
+        // replacing a card of the snapshot, even with the same card, does
+        table.placeCard(slotToCard[1], 1);
+        assertFalse(table.isCurrent(snapshot, slots, 3, versions));
+
+        table.removeCard(1);
+        assertEquals(Table.EMPTY, table.snapshot(slots, 3, cards, versions));
+    }
+
+    @Test
+    void placeCards_and_RemoveCards_InOneBatch() {
+
+        table.placeCards(new int[]{4, 8, 9}, new int[]{0, 2, 3});
+        assertEquals(3, table.countCards());
+        assertEquals(2, table.slotOf(8));
+        assertEquals(9, table.cardAt(3));
+
+        table.placeToken(0, 2);
+        table.removeCards(new int[]{1, 2, 3}); // slot 1 is empty
+        assertEquals(1, table.countCards());
+        assertEquals(Table.EMPTY, table.slotOf(8));
+        assertFalse(table.hasToken(0, 2));
+    }
+
+    @Test
+    void awaitNotInUse_BlocksUntilTheDealerIsDone() throws InterruptedException {
+
+        table.setStatus(Table.STATUS.USING);
+        Thread player = new Thread(() -> {
+            try {
+                table.awaitNotInUse();
+            } catch (InterruptedException ignored) {}
+        });
+        player.start();
+        player.join(100);
+        assertTrue(player.isAlive());
+
+        table.setStatus(Table.STATUS.NOTINUSE);
+        player.join(1000);
+        assertFalse(player.isAlive());
+    }
+
     @Test
     void countCards_AllSlotsAreFilled() {
 
@@ -97,14 +170,14 @@ class TableTest {
 
     //our tests
     private void removeTokens(boolean expected){
-        for (int i = 0; i< table.playerTokenGrid.length; i++) {
+        for (int i = 0; i< table.playerTokens.length; i++) {
             for (int j = 0; j < table.size; j++) {
                 assertEquals(expected, table.removeToken(i, j));
             }
         }
     }
     private void place_tokens_on_all_card_for_all_players(){
-        for (int i = 0; i< table.playerTokenGrid.length; i++) {
+        for (int i = 0; i< table.playerTokens.length; i++) {
             for (int j = 0; j < table.size; j++) {
                 table.placeToken(i,j);
             }
@@ -119,28 +192,28 @@ class TableTest {
     }
     private void placeCardsAndTokensAndAssert(){
         table.placeCard(8, 2);
-        assertEquals(8, (int) slotToCard[2]);
-        assertEquals(2, (int) cardToSlot[8]);
+        assertEquals(8, slotToCard[2]);
+        assertEquals(2, cardToSlot[8]);
         table.placeCard(41, 3);
-        assertEquals(41, (int) slotToCard[3]);
-        assertEquals(3, (int) cardToSlot[41]);
+        assertEquals(41, slotToCard[3]);
+        assertEquals(3, cardToSlot[41]);
         table.placeToken(0,2);
         table.placeToken(0,3);
-        assertEquals(true,table.playerTokenGrid[0][2]);
-        assertEquals(true,table.playerTokenGrid[0][3]);
+        assertEquals(true,table.hasToken(0, 2));
+        assertEquals(true,table.hasToken(0, 3));
         table.placeToken(1,2);
         table.placeToken(1,3);
-        assertEquals(true,table.playerTokenGrid[1][2]);
-        assertEquals(true,table.playerTokenGrid[1][3]);
+        assertEquals(true,table.hasToken(1, 2));
+        assertEquals(true,table.hasToken(1, 3));
 
     }
     private void removeAndAssert(){
         table.removeCard(2);
         table.removeCard(3);
-        assertEquals(false,table.playerTokenGrid[0][2]);
-        assertEquals(false,table.playerTokenGrid[0][3]);
-        assertEquals(false,table.playerTokenGrid[1][2]);
-        assertEquals(false,table.playerTokenGrid[1][3]);
+        assertEquals(false,table.hasToken(0, 2));
+        assertEquals(false,table.hasToken(0, 3));
+        assertEquals(false,table.hasToken(1, 2));
+        assertEquals(false,table.hasToken(1, 3));
 
 
     }
@@ -150,8 +223,73 @@ class TableTest {
         placeCardsAndTokensAndAssert();
         removeAndAssert();
     }
+
+    @Test
+    void tokenOwners_and_RemoveAllTokens(){
+        placeCardsAndTokensAndAssert();
+        assertEquals(0, table.nextTokenOwner(2, 0));
+        assertEquals(1, table.nextTokenOwner(2, 1));
+        assertEquals(-1, table.nextTokenOwner(2, 2));
+        assertEquals(-1, table.nextTokenOwner(0, 0));
+        table.removeTokens();
+        assertEquals(-1, table.nextTokenOwner(2, 0));
+        assertEquals(false, table.hasToken(1, 3));
+    }
     //
 
+    @Test
+    void setsOnTable_FollowPlacedAndRemovedCards() {
+        Properties properties = new Properties();
+        properties.put("Rows", "3");
+        properties.put("Columns", "4");
+        properties.put("TableDelaySeconds", "0");
+        MockLogger logger = new MockLogger();
+        Config config = new Config(logger, properties);
+        Util util = new UtilImpl(config);
+        Table table = new Table(new Env(logger, config, new MockUserInterface(), util));
+
+        Random random = new Random(7);
+        for (int round = 0; round < 200; ++round) {
+            int slot = random.nextInt(config.tableSize);
+            if (table.hasCard(slot))
+                table.removeCard(slot);
+            else {
+                int card = random.nextInt(config.deckSize);
+                if (table.slotOf(card) == Table.EMPTY) table.placeCard(card, slot);
+            }
+            List<Integer> cards = Arrays.stream(table.slotToCard).filter(card -> card != Table.EMPTY).boxed().collect(Collectors.toList());
+            assertEquals(util.findSets(cards, Integer.MAX_VALUE).size(), table.countSetsOnTable());
+            assertEquals(table.countSetsOnTable() > 0, table.existSetsOnTable());
+        }
+    }
+
+    @Test
+    void concurrentTokensOnSlots() throws InterruptedException {
+        fillAllSlots();
+        Thread[] players = new Thread[env.config.players];
+        for (int player = 0; player < players.length; ++player) {
+            int id = player;
+            players[player] = new Thread(() -> {
+                Random random = new Random(id);
+                for (int i = 0; i < 10000; ++i) {
+                    int slot = random.nextInt(table.size);
+                    table.lockSlot(slot);
+                    try {
+                        if (!table.removeToken(id, slot)) table.placeToken(id, slot);
+                    } finally {
+                        table.unlockSlot(slot);
+                    }
+                }
+            });
+            players[player].start();
+        }
+        for (Thread player : players)
+            player.join();
+
+        for (int slot = 0; slot < table.size; ++slot)
+            for (int player = 0; player < players.length; ++player)
+                assertEquals(table.hasToken(player, slot), table.nextTokenOwner(slot, player) == player);
+    }
 
     static class MockUserInterface implements UserInterface {
         @Override
@@ -201,10 +339,54 @@ class TableTest {
             return null;
         }
 
+        @Override
+        public boolean testSet(int a, int b, int c) {
+            return false;
+        }
+
+        @Override
+        public int findSets(int[] cards, int len, int count, SetSink sink) {
+            return 0;
+        }
+
+        @Override
+        public Stream<int[]> streamSets(int[] cards, int len) {
+            return Stream.empty();
+        }
+
+        @Override
+        public int findSetsWith(int card, int[] cards, int len, int count, SetSink sink) {
+            return 0;
+        }
+
+        @Override
+        public int thirdCard(int a, int b) {
+            return 0;
+        }
+
+        @Override
+        public int countSets(int[] cards, int len) {
+            return 0;
+        }
+
         @Override
         public void spin() {}
     }
 
+    /**
+     * Creates the environment of a test: the default configuration with some properties overridden, a mock logger and
+     * ui, and the real utilities.
+     * @param overrides - pairs of a property name and its value.
+     */
+    static Env testEnv(String... overrides) {
+        Properties properties = new Properties();
+        for (int i = 0; i + 1 < overrides.length; i += 2)
+            properties.put(overrides[i], overrides[i + 1]);
+        MockLogger logger = new MockLogger();
+        Config config = new Config(logger, properties);
+        return new Env(logger, config, new MockUserInterface(), new UtilImpl(config));
+    }
+
     static class MockLogger extends Logger {
         protected MockLogger() {
             super("", null);
@@ -0,0 +1,41 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ThreadsTest {
+
+    private String runIn(String threadModel) throws InterruptedException {
+        Env env = TableTest.testEnv("ThreadModel", threadModel);
+
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<String> name = new AtomicReference<>();
+        Threads.start(env, "player-" + threadModel, () -> {
+            name.set(Thread.currentThread().getName());
+            done.countDown();
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        return name.get();
+    }
+
+    @Test
+    void start_RunsTheTaskInANamedThread() throws InterruptedException {
+        assertEquals("player-PLATFORM", runIn(Threads.PLATFORM));
+        assertEquals("player-POOL", runIn(Threads.POOL));
+        // falls back to a platform thread on a JVM without virtual threads
+        assertEquals("player-VIRTUAL", runIn(Threads.VIRTUAL));
+    }
+
+    @Test
+    void daemon_NamesTheThreadsAndDoesNotKeepTheGameRunning() {
+        Thread thread = Threads.daemon("table-animator").newThread(() -> {});
+        assertEquals("table-animator", thread.getName());
+        assertTrue(thread.isDaemon());
+    }
+}